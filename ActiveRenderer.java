@@ -0,0 +1,183 @@
+/** ActiveRenderer
+ *
+ *  Draws the game and the depth view into one window from a thread of its
+ *  own, instead of letting each Swing panel repaint whenever it is asked.
+ *  Enabled with -Dblockdude.active=true.
+ *
+ *  Once per display refresh the newest game state and the newest depth
+ *  image are composited into a BufferStrategy back buffer and shown. If a
+ *  frame runs late, the refreshes it missed are skipped rather than drawn
+ *  in a hurry afterwards, so what is shown is never older than it has to
+ *  be. While IdleMode says nobody is in view, only a few frames a second
+ *  are presented. Presented frames per second and frame-time jitter are
+ *  printed every few seconds and shown in the corner.
+ **/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.locks.*;
+
+public class ActiveRenderer extends Canvas implements Runnable {
+	private static final int DEFAULT_REFRESH = 60;
+	private static final long REPORT_NANOS = 5000000000L;
+
+	private GameRunner game;
+	private TrackerPanel tracker;
+	private int gameWidth;
+
+	private Thread thread;
+	private volatile boolean running;
+	private long period;
+	private int idleEvery;           // refreshes per frame presented while idle
+	private boolean wasIdle = false;
+	private long idleRefreshes = 0;
+
+	// present times over the current report window
+	private long windowStart;
+	private long lastPresent;
+	private int frames = 0;
+	private int dropped = 0;
+	private double sumInterval = 0, sumSquares = 0;
+	private double maxInterval = 0;
+	private String stats = "";
+
+	private Font statsFont = new Font("SansSerif", Font.PLAIN, 12);
+
+
+	public ActiveRenderer(GameRunner game, TrackerPanel tracker) {
+		this.game = game;
+		this.tracker = tracker;
+
+		Dimension g = game.getPreferredSize();
+		Dimension t = tracker.getPreferredSize();
+		gameWidth = g.width;
+		setPreferredSize(new Dimension(g.width + t.width, Math.max(g.height, t.height)));
+		setBackground(Color.BLACK);
+
+		// frames are only ever drawn by the render thread
+		setIgnoreRepaint(true);
+		addKeyListener(game.keyListener());
+	}
+
+	// call once the canvas is on screen
+	public void start() {
+		createBufferStrategy(2);
+
+		int refresh = DEFAULT_REFRESH;
+		if(!GraphicsEnvironment.isHeadless()) {
+			int rate = getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+			if(rate != DisplayMode.REFRESH_RATE_UNKNOWN && rate > 0) {
+				refresh = rate;
+			}
+		}
+		period = 1000000000L / refresh;
+		idleEvery = Math.max(1, refresh / IdleMode.FPS);
+		Log.info("Active rendering at {} Hz", refresh);
+
+		running = true;
+		thread = new Thread(this, "renderer");
+		thread.setPriority(Thread.NORM_PRIORITY + 1);
+		thread.start();
+		requestFocus();
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+
+	public void run() {
+		BufferStrategy strategy = getBufferStrategy();
+		long next = System.nanoTime();
+		windowStart = lastPresent = next;
+
+		while(running) {
+			// wait for the next refresh; if already past it, skip the
+			// refreshes that were missed instead of queueing frames for them
+			next += period;
+			long now = System.nanoTime();
+			if(now > next) {
+				long missed = (now - next) / period + 1;
+				dropped += missed;
+				next += missed * period;
+			}
+			while((now = System.nanoTime()) < next) {
+				LockSupport.parkNanos(next - now);
+			}
+
+			// while idle, present only at IdleMode's rate, but still wake
+			// each refresh so a user arriving is shown at once
+			boolean idle = IdleMode.isIdle();
+			if(idle != wasIdle) {
+				wasIdle = idle;
+				restartWindow(now);
+			}
+			if(idle && ++idleRefreshes % idleEvery != 0) {
+				continue;
+			}
+
+			present(strategy);
+			record(System.nanoTime());
+		}
+	}
+
+	private void present(BufferStrategy strategy) {
+		do {
+			do {
+				Graphics2D g2d = (Graphics2D) strategy.getDrawGraphics();
+				try {
+					g2d.setColor(Color.BLACK);
+					g2d.fillRect(0, 0, getWidth(), getHeight());
+
+					game.render(g2d);
+
+					Graphics2D depth = (Graphics2D) g2d.create();
+					depth.translate(gameWidth, 0);
+					tracker.render(depth);
+					depth.dispose();
+
+					g2d.setFont(statsFont);
+					g2d.setColor(Color.GRAY);
+					g2d.drawString(stats, 10, getHeight() - 10);
+				} finally {
+					g2d.dispose();
+				}
+			} while(strategy.contentsRestored());
+
+			strategy.show();
+		} while(strategy.contentsLost());
+
+		Toolkit.getDefaultToolkit().sync();
+	}
+
+	// frame-time jitter is the standard deviation of the time between
+	// presented frames
+	private void record(long now) {
+		double interval = (now - lastPresent) / 1000000.0;
+		lastPresent = now;
+		frames++;
+		sumInterval += interval;
+		sumSquares += interval * interval;
+		maxInterval = Math.max(maxInterval, interval);
+
+		if(now - windowStart < REPORT_NANOS) {
+			return;
+		}
+
+		double seconds = (now - windowStart) / 1000000000.0;
+		double mean = sumInterval / frames;
+		double jitter = Math.sqrt(Math.max(0, sumSquares / frames - mean * mean));
+		stats = String.format("%.1f fps, jitter %.2f ms, worst %.1f ms, %d dropped",
+								frames / seconds, jitter, maxInterval, dropped);
+		Log.info("Renderer: {}", stats);
+
+		restartWindow(now);
+	}
+
+	private void restartWindow(long now) {
+		windowStart = lastPresent = now;
+		frames = 0;
+		dropped = 0;
+		sumInterval = sumSquares = maxInterval = 0;
+	}
+}
@@ -0,0 +1,141 @@
+/** BatchBoards
+ *
+ *  Steps many independent copies of a board at once, for automated players
+ *  and regression runs. There is no AWT and no console output here.
+ *
+ *  All boards share one flat byte array of tiles and one int array of
+ *  state records, and are stepped with the same rules as Board. Large
+ *  batches are split across cores with a fork/join pool.
+ *
+ *  A board that reaches a door or runs out of steps is reported as done
+ *  and put back to its starting position, ready for the next action.
+ **/
+
+import java.util.concurrent.*;
+
+public class BatchBoards {
+	public static final float WIN_REWARD = 1.0f;
+	public static final float STEP_REWARD = 0.0f;
+
+	// boards per fork/join task; small batches are stepped on the caller
+	private static final int CHUNK = 4096;
+
+	private final int count;
+	private final int rows;
+	private final int columns;
+	private final int size;        // cells per board
+	private final int maxSteps;    // steps before a board is given up on
+
+	private final byte[] start;    // tiles of the starting position
+	private final int[] startState;
+
+	private final byte[] cells;
+	private final int[] state;
+	private final int[] steps;
+
+	private ForkJoinPool pool;
+
+
+	public BatchBoards(Board template, int count, int maxSteps) {
+		this.count = count;
+		this.rows = template.rows;
+		this.columns = template.columns;
+		this.size = rows * columns;
+		this.maxSteps = maxSteps;
+
+		start = template.cells().clone();
+		startState = template.state.clone();
+
+		cells = new byte[size * count];
+		state = new int[Board.STATE_SIZE * count];
+		steps = new int[count];
+
+		for(int i=0; i<count; i++) {
+			reset(i);
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	// use a pool to step large batches in parallel, or null to stay on
+	// the calling thread
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public void reset(int i) {
+		System.arraycopy(start, 0, cells, i*size, size);
+		System.arraycopy(startState, 0, state, i*Board.STATE_SIZE, Board.STATE_SIZE);
+		steps[i] = 0;
+	}
+
+	// applies actions[i] (a Board action code) to board i for every board,
+	// and fills in its reward and whether it finished
+	public void step(int[] actions, float[] rewards, boolean[] done) {
+		if(pool == null || count <= CHUNK) {
+			step(actions, rewards, done, 0, count);
+		} else {
+			pool.invoke(new StepTask(actions, rewards, done, 0, count));
+		}
+	}
+
+	private void step(int[] actions, float[] rewards, boolean[] done, int from, int to) {
+		for(int i=from; i<to; i++) {
+			int base = i*size;
+			int s = i*Board.STATE_SIZE;
+
+			Board.step(cells, base, rows, columns, state, s, actions[i]);
+			steps[i]++;
+
+			if(Board.isWon(cells, base, rows, state, s)) {
+				rewards[i] = WIN_REWARD;
+				done[i] = true;
+			} else {
+				rewards[i] = STEP_REWARD;
+				done[i] = steps[i] >= maxSteps;
+			}
+
+			if(done[i]) {
+				reset(i);
+			}
+		}
+	}
+
+	// copy of one board, for inspecting or drawing it
+	public Board board(int i) {
+		Board b = new Board(rows, columns, new byte[size], 0);
+		System.arraycopy(cells, i*size, b.cells(), 0, size);
+		System.arraycopy(state, i*Board.STATE_SIZE, b.state, 0, Board.STATE_SIZE);
+		return b;
+	}
+
+
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int[] actions;
+		final float[] rewards;
+		final boolean[] done;
+		final int from, to;
+
+		StepTask(int[] actions, float[] rewards, boolean[] done, int from, int to) {
+			this.actions = actions;
+			this.rewards = rewards;
+			this.done = done;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if(to - from <= CHUNK) {
+				step(actions, rewards, done, from, to);
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new StepTask(actions, rewards, done, from, mid),
+						  new StepTask(actions, rewards, done, mid, to));
+			}
+		}
+	}
+}
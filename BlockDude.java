@@ -20,6 +20,7 @@ import java.io.*;
 public class BlockDude extends JFrame {
   private TrackerPanel trackPanel;
   private GameRunner game;
+  private ActiveRenderer renderer;   // only with -Dblockdude.active=true
   
   public BlockDude()
   {
@@ -29,20 +30,43 @@ public class BlockDude extends JFrame {
     c.setLayout( new BoxLayout(c, BoxLayout.LINE_AXIS) );   
 
 	game = new GameRunner(); // WYLIE
-	c.add(game);
 
     trackPanel = new TrackerPanel(game);
-    c.add(trackPanel);
+
+    Integer metricsPort = Integer.getInteger("blockdude.metrics.port");
+    if (metricsPort != null) {
+      try {
+        MetricsServer.start(metricsPort, game);
+      }
+      catch (IOException e)    // keep playing without it
+      {  Log.warn("No metrics server: {}", e);  }
+    }
+
+    if (Boolean.getBoolean("blockdude.active")) {
+      // one canvas drawn by its own thread, instead of two Swing panels
+      renderer = new ActiveRenderer(game, trackPanel);
+      c.add(renderer);
+    }
+    else {
+      c.add(game);
+      c.add(trackPanel);
+    }
 
     addWindowListener( new WindowAdapter() {
       public void windowClosing(WindowEvent e)
-      { trackPanel.closeDown();  }
+      { if (renderer != null)
+          renderer.stop();
+        trackPanel.closeDown();
+      }
     });
 
     pack();  
     setResizable(false);
     setLocationRelativeTo(null);
     setVisible(true);
+
+    if (renderer != null)
+      renderer.start();
   }
 
   public static void main( String args[] )
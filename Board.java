@@ -0,0 +1,361 @@
+/** Board
+ *
+ *  The rules of BlockDude and the state of one level, with no drawing and
+ *  no console output. Level wraps a Board for play; the solver, the hint
+ *  engine and BatchBoards use it directly.
+ *
+ *  Tiles are stored column by column in a flat byte array, since every
+ *  rule looks down a single column. The rules themselves are static
+ *  methods over (cells, base offset, state record) so that BatchBoards can
+ *  run them over thousands of boards packed into one array.
+ *
+ *  A board loaded from a compiled level starts out with only its tiles'
+ *  packed form; columns are decoded a chunk at a time as the player or
+ *  the screen gets near them, so opening a huge level costs little more
+ *  than opening a small one. Code that needs every tile uses cells().
+ **/
+
+import java.nio.*;
+import java.util.*;
+
+public class Board {
+	// tile codes, as used in .lvl files
+	public static final byte AIR    = 0;
+	public static final byte DOOR   = 1;
+	public static final byte BLOCK  = 3;
+	public static final byte START  = 7;
+	public static final byte GROUND = 8;
+
+	// actions, in the same order as Move
+	public static final int LEFT        = 0;
+	public static final int RIGHT       = 1;
+	public static final int LIFT_LEFT   = 2;
+	public static final int LIFT_RIGHT  = 3;
+	public static final int PLACE_LEFT  = 4;
+	public static final int PLACE_RIGHT = 5;
+
+	// layout of a state record
+	static final int PLAYER     = 0;   // player column
+	static final int HEIGHT     = 1;   // row of the tile the player stands on
+	static final int CARRYING   = 2;   // 1 if holding a block
+	static final int CHANGED    = 3;   // cell touched by the last lift/place, or -1
+	static final int REPLACED   = 4;   // tile that was in that cell before
+	static final int STATE_SIZE = 5;
+
+	// columns decoded at a time from a packed board
+	static final int CHUNK_COLUMNS = 64;
+
+	final int rows;
+	final int columns;
+	final byte[] cells;
+	final int[] state = new int[STATE_SIZE];
+
+	// two tiles per byte, column by column, as in a compiled level; null
+	// once every chunk has been decoded (or for boards that never had one)
+	private volatile ByteBuffer packed;
+	private boolean[] decoded;
+	private int chunksLeft;
+
+	// cells is column-major: the tile at (row, col) is cells[col*rows + row]
+	public Board(int rows, int columns, byte[] cells, int startCol) {
+		this.rows = rows;
+		this.columns = columns;
+		this.cells = cells;
+
+		state[PLAYER] = startCol;
+		state[HEIGHT] = lowestObstacle(startCol);
+		state[CHANGED] = -1;
+	}
+
+	// a board whose tiles are decoded from packed as they are needed;
+	// packed must hold (rows*columns+1)/2 bytes from its position
+	Board(int rows, int columns, ByteBuffer packed, int startCol) {
+		this.rows = rows;
+		this.columns = columns;
+		this.cells = new byte[rows * columns];
+
+		this.packed = packed.slice();
+		chunksLeft = (columns + CHUNK_COLUMNS-1) / CHUNK_COLUMNS;
+		decoded = new boolean[chunksLeft];
+
+		state[PLAYER] = startCol;
+		state[HEIGHT] = lowestObstacle(startCol);
+		state[CHANGED] = -1;
+	}
+
+	// copies share the packed tiles, so copying doesn't decode anything
+	public Board(Board src) {
+		rows = src.rows;
+		columns = src.columns;
+		synchronized(src) {
+			cells = src.cells.clone();
+			if(src.packed != null) {
+				packed = src.packed;
+				decoded = src.decoded.clone();
+				chunksLeft = src.chunksLeft;
+			}
+		}
+		System.arraycopy(src.state, 0, state, 0, STATE_SIZE);
+	}
+
+	// builds a board from rows of tiles, as read from a .lvl file;
+	// short rows are padded with air
+	public static Board fromRows(int[][] tiles) {
+		int rows = tiles.length;
+		int columns = 0;
+		for(int[] row : tiles) {
+			columns = Math.max(columns, row.length);
+		}
+
+		byte[] cells = new byte[rows * columns];
+		int startCol = 0;
+		for(int i=0; i<rows; i++) {
+			for(int j=0; j<tiles[i].length; j++) {
+				cells[j*rows + i] = (byte) tiles[i][j];
+				if(tiles[i][j] == START) {
+					startCol = j;
+				}
+			}
+		}
+
+		return new Board(rows, columns, cells, startCol);
+	}
+
+
+	public int getRows()      { return rows; }
+	public int getColumns()   { return columns; }
+	public int getPlayer()    { return state[PLAYER]; }
+	public int getHeight()    { return state[HEIGHT]; }
+	public boolean isCarrying() { return state[CARRYING] != 0; }
+
+	public int tile(int row, int col) {
+		ensure(col);
+		return cells[col*rows + row];
+	}
+
+	// every tile, decoded; for code that works on the whole board at once
+	byte[] cells() {
+		if(packed != null) {
+			ensure(0, columns-1);
+		}
+		return cells;
+	}
+
+	// cell changed by the last lift or place, as a column-major index, or -1
+	public int lastChanged() {
+		return state[CHANGED];
+	}
+
+	// tile that the last lift or place overwrote
+	public int lastReplaced() {
+		return state[REPLACED];
+	}
+
+	// applies one action; returns false if it was not possible
+	public boolean step(int action) {
+		// the rules only look at the player's column and its neighbours
+		int player = state[PLAYER];
+		ensure(Math.max(0, player-1), Math.min(columns-1, player+1));
+		return step(cells, 0, rows, columns, state, 0, action);
+	}
+
+	public boolean isWon() {
+		ensure(state[PLAYER]);
+		return isWon(cells, 0, rows, state, 0);
+	}
+
+	public int lowestObstacle(int col) {
+		ensure(col);
+		return lowestObstacle(cells, 0, rows, col);
+	}
+
+	// puts the player somewhere else, if there is ground there and room to
+	// stand (and hold a block); returns false and changes nothing otherwise
+	public boolean placePlayer(int col, boolean carrying) {
+		if(col < 1 || col >= columns) {
+			return false;
+		}
+
+		int height = lowestObstacle(col);
+		if(height >= rows || height < (carrying ? 3 : 2)) {
+			return false;
+		}
+
+		state[PLAYER] = col;
+		state[HEIGHT] = height;
+		state[CARRYING] = carrying ? 1 : 0;
+		state[CHANGED] = -1;
+		return true;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof Board)) {
+			return false;
+		}
+		Board b = (Board) o;
+		return rows == b.rows && columns == b.columns
+				&& state[PLAYER] == b.state[PLAYER]
+				&& state[CARRYING] == b.state[CARRYING]
+				&& Arrays.equals(cells(), b.cells());
+	}
+
+	@Override
+	public int hashCode() {
+		return (Arrays.hashCode(cells()) * 31 + state[PLAYER]) * 31 + state[CARRYING];
+	}
+
+
+	// makes sure the chunks holding columns from..to are decoded; free once
+	// the whole board is. A chunk is always decoded before anything can
+	// change it, so decoding never overwrites a move.
+	private void ensure(int col) {
+		if(packed != null) {
+			decode(col / CHUNK_COLUMNS, col / CHUNK_COLUMNS);
+		}
+	}
+	private void ensure(int from, int to) {
+		if(packed != null) {
+			decode(from / CHUNK_COLUMNS, to / CHUNK_COLUMNS);
+		}
+	}
+
+	// synchronized as painting may decode while the game thread steps
+	private synchronized void decode(int firstChunk, int lastChunk) {
+		if(packed == null) {
+			return;
+		}
+
+		for(int chunk = firstChunk; chunk <= lastChunk; chunk++) {
+			if(decoded[chunk]) {
+				continue;
+			}
+
+			int from = chunk * CHUNK_COLUMNS * rows;
+			int to = Math.min(columns, (chunk+1) * CHUNK_COLUMNS) * rows;
+			for(int k=from; k<to; k++) {
+				int b = packed.get(k >> 1);
+				cells[k] = (byte) ((k & 1) == 0 ? (b >> 4) & 0xf : b & 0xf);
+			}
+
+			decoded[chunk] = true;
+			if(--chunksLeft == 0) {
+				packed = null;   // lets the mapping go
+				decoded = null;
+			}
+		}
+	}
+
+
+	// ------------------------- rules -------------------------
+	//
+	// each works on the board starting at cells[base] whose state record
+	// starts at state[s]
+
+	// row of the highest tile in a column that can be stood on
+	static int lowestObstacle(byte[] cells, int base, int rows, int col) {
+		int at = base + col*rows;
+		for(int i=0; i<rows; i++) {
+			byte el = cells[at + i];
+			if(el != AIR && el != DOOR && el != START) {
+				return i;
+			}
+		}
+
+		return rows;
+	}
+
+	static boolean step(byte[] cells, int base, int rows, int columns,
+						int[] state, int s, int action) {
+		state[s + CHANGED] = -1;
+
+		switch(action) {
+			case LEFT:        return move(cells, base, rows, columns, state, s, -1);
+			case RIGHT:       return move(cells, base, rows, columns, state, s, 1);
+			case LIFT_LEFT:   return lift(cells, base, rows, columns, state, s, -1);
+			case LIFT_RIGHT:  return lift(cells, base, rows, columns, state, s, 1);
+			case PLACE_LEFT:  return place(cells, base, rows, columns, state, s, -1);
+			case PLACE_RIGHT: return place(cells, base, rows, columns, state, s, 1);
+			default:          return false;
+		}
+	}
+
+	// the player can step down any distance, but only up by one tile;
+	// the leftmost column is never entered
+	private static boolean move(byte[] cells, int base, int rows, int columns,
+								int[] state, int s, int dir) {
+		int player = state[s + PLAYER];
+		if(!inReach(player, columns, dir)) {
+			return false;
+		}
+
+		int height = lowestObstacle(cells, base, rows, player + dir);
+		if(state[s + HEIGHT] - height > 1) {
+			return false; // would have to jump
+		}
+
+		state[s + PLAYER] = player + dir;
+		state[s + HEIGHT] = height;
+		return true;
+	}
+
+	// can only lift a block directly next to the player, at head or foot level
+	private static boolean lift(byte[] cells, int base, int rows, int columns,
+								int[] state, int s, int dir) {
+		int player = state[s + PLAYER];
+		int height = state[s + HEIGHT];
+		if(state[s + CARRYING] != 0 || !inReach(player, columns, dir) || height < 2) {
+			return false;
+		}
+
+		int col = base + (player + dir)*rows;
+		int at;
+		if(cells[col + height-2] == BLOCK) {
+			at = col + height-2;
+		} else if(cells[col + height-1] == BLOCK) {
+			at = col + height-1;
+		} else {
+			return false;
+		}
+
+		cells[at] = AIR;
+		state[s + CARRYING] = 1;
+		state[s + CHANGED] = at - base;
+		state[s + REPLACED] = BLOCK;
+		return true;
+	}
+
+	// a placed block falls to the lowest possible spot, which must not be
+	// above the player's head
+	private static boolean place(byte[] cells, int base, int rows, int columns,
+								int[] state, int s, int dir) {
+		int player = state[s + PLAYER];
+		if(state[s + CARRYING] == 0 || !inReach(player, columns, dir)) {
+			return false;
+		}
+
+		int ground = lowestObstacle(cells, base, rows, player + dir);
+		if(ground < 1 || ground <= state[s + HEIGHT]-1) {
+			return false;
+		}
+
+		int at = base + (player + dir)*rows + ground-1;
+		state[s + REPLACED] = cells[at];
+		cells[at] = BLOCK;
+		state[s + CARRYING] = 0;
+		state[s + CHANGED] = at - base;
+		return true;
+	}
+
+	private static boolean inReach(int player, int columns, int dir) {
+		return dir > 0 ? player < columns-1 : player > 1;
+	}
+
+	// is the player on a door?
+	static boolean isWon(byte[] cells, int base, int rows, int[] state, int s) {
+		int height = state[s + HEIGHT];
+		int col = base + state[s + PLAYER]*rows;
+		return (height >= 1 && cells[col + height-1] == DOOR)
+				|| (height >= 2 && cells[col + height-2] == DOOR);
+	}
+}
@@ -0,0 +1,255 @@
+/** CompiledLevel
+ *
+ *  Binary form of a .lvl file, stored next to it with a .lvlc extension,
+ *  that loads with no text parsing.
+ *
+ *  Layout (big-endian):
+ *    int     magic "BDLC"
+ *    short   version
+ *    int     rows, columns
+ *    int     start row, start column
+ *    int     number of doors, then (row, column) for each
+ *    byte[20] SHA-1 of the source .lvl file
+ *    long    length and modification time (ms) of the source when compiled
+ *    tiles, column by column, two 4-bit tile codes per byte (high first)
+ *
+ *  usage: java CompiledLevel <file.lvl>...   compiles a level pack ahead
+ *  of time; otherwise levels are compiled the first time they are loaded.
+ **/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+public class CompiledLevel {
+	static final int MAGIC = 0x42444C43;   // "BDLC"
+	static final int VERSION = 2;
+	static final int HASH_SIZE = 20;
+
+	public static void main(String[] args) throws IOException {
+		for(String arg : args) {
+			File source = new File(arg);
+			compile(source, compiledFile(source));
+			Log.info("Compiled {}", source);
+		}
+	}
+
+	// where the compiled form of a level lives
+	public static File compiledFile(File source) {
+		String name = source.getName();
+		if(name.endsWith(".lvl")) {
+			name = name.substring(0, name.length() - 4);
+		}
+		return new File(source.getParentFile(), name + ".lvlc");
+	}
+
+	// a compiled file is used only if it was made from the source as it is
+	// now. If the source has the length and modification time stored in
+	// the header it is taken as unchanged without being read; otherwise it
+	// is hashed and must match the header's hash. Times are only compared
+	// for equality: copying or unpacking a level pack can leave the text
+	// older than a stale compiled file.
+	public static boolean isFresh(File source) {
+		File compiled = compiledFile(source);
+		if(!compiled.exists()) {
+			return false;
+		}
+		try {
+			ByteBuffer header = map(compiled);
+			skipToHash(header);
+			int statAt = header.position() + HASH_SIZE;
+			if(header.getLong(statAt) == source.length()
+					&& header.getLong(statAt + 8) == source.lastModified()) {
+				return true;
+			}
+
+			if(!readHash(header).equals(LevelValidator.contentHash(source))) {
+				return false;
+			}
+			stamp(compiled, statAt, source);   // same text: skip the hash next time
+			return true;
+		} catch(IOException e) {
+			return false;
+		} catch(BufferUnderflowException e) {
+			return false;
+		} catch(IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	// loads a level, from its compiled form when that is up to date;
+	// otherwise parses the text and compiles it for next time
+	public static Board open(File source) throws IOException {
+		if(isFresh(source)) {
+			try {
+				return load(compiledFile(source));
+			} catch(IOException e) {
+				Log.warn("Ignoring bad compiled level: {}", e.getMessage());
+			}
+		}
+
+		// taken first, so a change made while reading shows up next time
+		long length = source.length();
+		long modified = source.lastModified();
+
+		Board board = LevelParser.parse(source);
+		try {
+			write(board, LevelValidator.contentHash(source), length, modified, compiledFile(source));
+		} catch(IOException e) {
+			// read-only level directory; the text is still usable
+		}
+		return board;
+	}
+
+	public static void compile(File source, File target) throws IOException {
+		long length = source.length();
+		long modified = source.lastModified();
+		write(LevelParser.parse(source), LevelValidator.contentHash(source), length, modified, target);
+	}
+
+	// hash of the source file the compiled file was made from
+	static String headerHash(File compiled) throws IOException {
+		ByteBuffer header = map(compiled);
+		try {
+			skipToHash(header);
+			return readHash(header);
+		} catch(BufferUnderflowException e) {
+			throw new IOException(compiled + ": truncated");
+		} catch(IllegalArgumentException e) {
+			throw new IOException(compiled + ": truncated");
+		}
+	}
+
+	private static String readHash(ByteBuffer header) {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<HASH_SIZE; i++) {
+			sb.append(String.format("%02x", header.get() & 0xff));
+		}
+		return sb.toString();
+	}
+
+	// records the source's current length and modification time, at
+	// offset at in the compiled file
+	private static void stamp(File compiled, int at, File source) {
+		try {
+			RandomAccessFile file = new RandomAccessFile(compiled, "rw");
+			try {
+				file.seek(at);
+				file.writeLong(source.length());
+				file.writeLong(source.lastModified());
+			} finally {
+				file.close();
+			}
+		} catch(IOException e) {
+			// read-only level directory; it is hashed again next time
+		}
+	}
+
+
+	public static Board load(File compiled) throws IOException {
+		ByteBuffer buf = map(compiled);
+		try {
+			int rows = buf.getInt();
+			int columns = buf.getInt();
+			buf.getInt();   // start row; the player always stands on the ground
+			int startCol = buf.getInt();
+			skipDoors(buf);
+			buf.position(buf.position() + HASH_SIZE + 16);   // hash, source length and time
+
+			int size = rows * columns;
+			if(rows <= 0 || columns <= 0 || buf.remaining() < (size + 1) / 2) {
+				throw new IOException(compiled + ": truncated");
+			}
+
+			// tiles are decoded by the board as they are needed
+			return new Board(rows, columns, buf, startCol);
+		} catch(BufferUnderflowException e) {
+			throw new IOException(compiled + ": truncated");
+		}
+	}
+
+	// maps the file and checks its magic number and version
+	private static ByteBuffer map(File compiled) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(compiled, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if(buf.remaining() < 6 || buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+				throw new IOException(compiled + ": not a compiled level");
+			}
+			return buf;
+		} finally {
+			file.close();   // the mapping stays valid after closing
+		}
+	}
+
+	private static void skipToHash(ByteBuffer buf) {
+		buf.position(buf.position() + 16);   // rows, columns, start
+		skipDoors(buf);
+	}
+
+	private static void skipDoors(ByteBuffer buf) {
+		int doors = buf.getInt();
+		buf.position(buf.position() + doors * 8);
+	}
+
+
+	private static void write(Board board, String hash, long length, long modified, File target)
+			throws IOException {
+		int rows = board.getRows();
+		byte[] cells = board.cells();
+		int size = cells.length;
+
+		ArrayList<Integer> doors = new ArrayList<Integer>();
+		int startRow = 0;
+		for(int k=0; k<size; k++) {
+			if(cells[k] == Board.DOOR) {
+				doors.add(k);
+			} else if(cells[k] == Board.START) {
+				startRow = k % rows;
+			}
+		}
+
+		// unique temp name, as the game and the validator may both compile
+		File tmp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tmp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeInt(rows);
+			out.writeInt(board.getColumns());
+			out.writeInt(startRow);
+			out.writeInt(board.getPlayer());
+
+			out.writeInt(doors.size());
+			for(int door : doors) {
+				out.writeInt(door % rows);
+				out.writeInt(door / rows);
+			}
+
+			for(int i=0; i<HASH_SIZE; i++) {
+				out.writeByte(Integer.parseInt(hash.substring(i*2, i*2+2), 16));
+			}
+			out.writeLong(length);
+			out.writeLong(modified);
+
+			for(int k=0; k<size; k+=2) {
+				int hi = cells[k];
+				int lo = k+1 < size ? cells[k+1] : 0;
+				out.writeByte((hi << 4) | lo);
+			}
+		} finally {
+			out.close();
+		}
+
+		if(!tmp.renameTo(target)) {
+			target.delete();
+			if(!tmp.renameTo(target)) {
+				tmp.delete();
+				throw new IOException("unable to write " + target);
+			}
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/** Depth image buffer
+ *  split out of TrackerPanel
+ **/
+
+// DepthFrame.java
+
+/* Image bytes wrapped once in a BufferedImage, so drawing a frame
+   doesn't build a new raster and colour model each time.
+
+   There are three: DepthStage keeps the one being filled by
+   DepthProcessor and the newest finished one, and TrackerPanel has the
+   one being drawn.
+*/
+
+import java.awt.image.*;
+import java.awt.color.*;
+
+
+public class DepthFrame
+{
+  byte[] bytes;
+  BufferedImage image;
+  long seq = 0;      // which sensor frame it holds; 0 = none yet
+
+  public DepthFrame(int width, int height)
+  {
+    bytes = new byte[width * height * 3];
+
+    // an 8-bit RGB channel color model
+    ColorModel colorModel = new ComponentColorModel(
+                   ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] { 8, 8, 8},
+                   false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+
+    DataBufferByte dataBuffer = new DataBufferByte(bytes, width*height*3);
+    WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width,
+                               height, width*3, 3, new int[] { 0, 1, 2}, null);
+    image = new BufferedImage(colorModel, raster, false, null);
+  }
+
+}  // end of DepthFrame class
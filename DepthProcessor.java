@@ -0,0 +1,199 @@
+/** Depth image processing
+ *  split out of TrackerPanel
+ **/
+
+// DepthProcessor.java
+
+/* Turns a depth map and the matching map of user IDs into the bytes of
+   an RGB image where each user is coloured differently, shaded by
+   depth, and everything else is black.
+
+   Only plain buffers go in and out, so it can be run (and benchmarked)
+   without a sensor.
+*/
+
+import java.awt.*;
+import java.nio.ShortBuffer;
+
+
+public class DepthProcessor
+{
+  private static final int MAX_DEPTH_SIZE = 10000;
+
+  private Color[] userColors;
+          /* colors used to draw each user's depth image, except the last
+             (white) which is for the background */
+
+  private float histogram[];        // for the depth values
+  private int maxDepth = 0;         // largest depth value
+  private volatile int userPixels = 0;   // pixels belonging to a user in the last frame
+
+
+  public DepthProcessor(Color[] userColors)
+  {
+    this.userColors = userColors;
+    histogram = new float[MAX_DEPTH_SIZE];
+  }
+
+
+  public int getUserPixels()
+  {  return userPixels;  }
+
+
+
+  public void process(ShortBuffer depthBuf, ShortBuffer usersBuf, byte[] imgbytes)
+  /* build a histogram of 8-bit depth values, and convert it to
+     depth image bytes where each user is coloured differently.
+     usersBuf is a labeled depth map, where each pixel holds a
+     user ID (e.g. 1, 2, 3), or 0 to denote that the pixel is
+     part of the background. */
+  {
+    long time = System.nanoTime();
+    calcHistogram(depthBuf);
+    depthBuf.rewind();
+    time = PipelineStats.lap(PipelineStats.Stage.HISTOGRAM, time);
+
+    int users = 0;
+    while (depthBuf.remaining() > 0) {
+      int pos = depthBuf.position();
+      short depthVal = depthBuf.get();
+      short userID = usersBuf.get();
+
+      imgbytes[3*pos] = 0;     // default colour is black when there's no depth data
+      imgbytes[3*pos + 1] = 0;
+      imgbytes[3*pos + 2] = 0;
+
+      if (depthVal != 0 && userID != 0) { // there is depth data for a user here
+        users++;
+        // convert userID to index into userColors[]
+        int colorIdx = userID % (userColors.length-1);   // skip last color
+
+        // convert histogram value (0.0-1.0f) to a RGB color
+        float histValue = histogram[depthVal];
+        imgbytes[3*pos] = (byte) (histValue * userColors[colorIdx].getRed());
+        imgbytes[3*pos + 1] = (byte) (histValue * userColors[colorIdx].getGreen());
+        imgbytes[3*pos + 2] = (byte) (histValue * userColors[colorIdx].getBlue());
+      }
+    }
+    userPixels = users;
+    PipelineStats.lap(PipelineStats.Stage.COLORIZE, time);
+  }  // end of process()
+
+
+
+  public void processCoarse(ShortBuffer depthBuf, ShortBuffer usersBuf, byte[] imgbytes,
+                                                                int width, int step)
+  /* as process(), but only looks at every step'th pixel of every
+     step'th row, and colours the step x step block around it the same;
+     used while nobody is in view (see IdleMode), or to catch up when
+     frames run late (see QualityGovernor) */
+  {
+    long time = System.nanoTime();
+    calcHistogram(depthBuf, width, step);
+    time = PipelineStats.lap(PipelineStats.Stage.HISTOGRAM, time);
+
+    int height = depthBuf.limit() / width;
+    int users = 0;
+    for (int y = 0; y < height; y += step) {
+      for (int x = 0; x < width; x += step) {
+        int pos = y*width + x;
+        short depthVal = depthBuf.get(pos);
+        short userID = usersBuf.get(pos);
+
+        byte red = 0, green = 0, blue = 0;   // black when there's no depth data
+        if (depthVal != 0 && userID != 0) {
+          users += step*step;
+          int colorIdx = userID % (userColors.length-1);   // skip last color
+          float histValue = histogram[depthVal];
+          red = (byte) (histValue * userColors[colorIdx].getRed());
+          green = (byte) (histValue * userColors[colorIdx].getGreen());
+          blue = (byte) (histValue * userColors[colorIdx].getBlue());
+        }
+
+        int bottom = Math.min(y+step, height);
+        int right = Math.min(x+step, width);
+        for (int by = y; by < bottom; by++) {
+          for (int i = 3*(by*width + x); i < 3*(by*width + right); i += 3) {
+            imgbytes[i] = red;
+            imgbytes[i + 1] = green;
+            imgbytes[i + 2] = blue;
+          }
+        }
+      }
+    }
+    userPixels = users;
+    PipelineStats.lap(PipelineStats.Stage.COLORIZE, time);
+  }  // end of processCoarse()
+
+
+
+  void calcHistogram(ShortBuffer depthBuf)
+  {
+    clearHistogram();
+
+    // record number of different depths in histogram[]
+    int numPoints = 0;
+    while (depthBuf.remaining() > 0) {
+      short depthVal = depthBuf.get();
+      if (depthVal > maxDepth)
+        maxDepth = depthVal;
+      if ((depthVal != 0)  && (depthVal < MAX_DEPTH_SIZE)){      // skip histogram[0]
+        histogram[depthVal]++;
+        numPoints++;
+      }
+    }
+    // System.out.println("No. of numPoints: " + numPoints);
+    // System.out.println("Maximum depth: " + maxDepth);
+
+    scaleHistogram(numPoints);
+  }  // end of calcHistogram()
+
+
+
+  private void calcHistogram(ShortBuffer depthBuf, int width, int step)
+  // as calcHistogram() above, from every step'th pixel of every step'th row
+  {
+    clearHistogram();
+
+    int numPoints = 0;
+    int size = depthBuf.limit();
+    for (int row = 0; row < size; row += width*step) {
+      for (int pos = row; pos < row + width; pos += step) {
+        short depthVal = depthBuf.get(pos);
+        if (depthVal > maxDepth)
+          maxDepth = depthVal;
+        if ((depthVal != 0)  && (depthVal < MAX_DEPTH_SIZE)) {
+          histogram[depthVal]++;
+          numPoints++;
+        }
+      }
+    }
+    scaleHistogram(numPoints);
+  }  // end of calcHistogram()
+
+
+
+  private void clearHistogram()
+  {
+    for (int i = 0; i <= maxDepth; i++)
+      histogram[i] = 0;
+    maxDepth = 0;
+  }  // end of clearHistogram()
+
+
+
+  private void scaleHistogram(int numPoints)
+  {
+    // convert into a cummulative depth count (skipping histogram[0])
+    for (int i = 1; i <= maxDepth; i++)
+      histogram[i] += histogram[i-1];
+
+    /* convert cummulative depth into the range 0.0 - 1.0f
+       which will later be used to modify a color from userColors[] */
+    if (numPoints > 0) {
+      for (int i = 1; i <= maxDepth; i++)    // skipping histogram[0]
+        histogram[i] = 1.0f - (histogram[i] / (float) numPoints);
+    }
+  }  // end of scaleHistogram()
+
+}  // end of DepthProcessor class
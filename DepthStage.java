@@ -0,0 +1,192 @@
+/** Depth preview stage
+ *  split out of TrackerPanel
+ **/
+
+// DepthStage.java
+
+/* Colours the depth preview on a thread of its own, so the sensor
+   thread can go straight on to the skeletons and gestures, and a slow
+   preview never holds them up.
+
+   The sensor thread copies each frame's depth and user maps into one of
+   a small pool of DepthInputs, tagged with the frame's id, and submits
+   it. At most QUEUE frames wait to be coloured; if the stage falls
+   behind, the oldest waiting frame is dropped for the new one, since
+   only the newest preview is worth showing. Nothing is allocated per
+   frame.
+
+   The stage colours each input into its back DepthFrame and makes that
+   the newest image, which the painter swaps out with newest(). The
+   images are triple-buffered: one being coloured, the newest finished
+   one, and the one being drawn.
+*/
+
+import java.awt.*;
+import java.nio.ShortBuffer;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import jdk.jfr.EventType;
+
+
+public class DepthStage implements Runnable
+{
+  private static final int QUEUE = 2;    // frames waiting to be coloured
+
+  private static final LongAdder dropped = new LongAdder();   // frames never coloured
+
+  private static final EventType COLOURED =
+      EventType.getEventType(PipelineEvents.DepthColoured.class);
+
+  private DepthProcessor depths;
+  private int width;
+  private Component view;    // repainted after each new image
+
+  // a pool of inputs; the sensor thread fills them, the stage colours them
+  private ArrayBlockingQueue<DepthInput> free;
+  private ArrayBlockingQueue<DepthInput> ready = new ArrayBlockingQueue<DepthInput>(QUEUE);
+
+  // images: being coloured, newest finished
+  private DepthFrame back;
+  private AtomicReference<DepthFrame> latest;
+
+
+  static class DepthInput
+  // one sensor frame's maps, copied out of OpenNI's buffers
+  {
+    final short[] depth, users;
+    final ShortBuffer depthBuf, usersBuf;
+    long id;       // the frame's FrameTag id
+    int step;      // pixels per sample, each way
+
+    DepthInput(int size)
+    {
+      depth = new short[size];
+      users = new short[size];
+      depthBuf = ShortBuffer.wrap(depth);
+      usersBuf = ShortBuffer.wrap(users);
+    }
+  }  // end of DepthInput class
+
+
+
+  public DepthStage(DepthProcessor depths, int width, int height, Component view)
+  {
+    this.depths = depths;
+    this.width = width;
+    this.view = view;
+
+    // one for each waiting frame, and one being coloured
+    free = new ArrayBlockingQueue<DepthInput>(QUEUE + 1);
+    for (int i = 0; i < QUEUE + 1; i++)
+      free.add(new DepthInput(width * height));
+
+    back = new DepthFrame(width, height);
+    latest = new AtomicReference<DepthFrame>(new DepthFrame(width, height));
+
+    Thread thread = new Thread(this, "depth-preview");
+    thread.setDaemon(true);
+    thread.start();
+  }  // end of DepthStage()
+
+
+  public static long dropped()
+  // frames dropped because the stage was behind
+  {  return dropped.sum();  }
+
+
+
+  // --------------- sensor thread ----------------------
+
+  public void submit(ShortBuffer depthBuf, ShortBuffer usersBuf, long id, int step)
+  /* copy the maps of frame id to be coloured, looking at every step'th
+     pixel each way; drops the oldest waiting frame if the queue is full */
+  {
+    DepthInput in = free.poll();
+    if (in == null) {     // all waiting or being coloured: reuse the oldest
+      in = ready.poll();
+      if (in == null) {   // the stage has just taken it; skip this frame
+        dropped.increment();
+        return;
+      }
+      dropped.increment();
+    }
+
+    depthBuf.get(in.depth);
+    usersBuf.get(in.users);
+    in.id = id;
+    in.step = step;
+
+    while (!ready.offer(in)) {   // full: drop the oldest
+      DepthInput old = ready.poll();
+      if (old != null) {
+        free.offer(old);
+        dropped.increment();
+      }
+    }
+  }  // end of submit()
+
+
+
+  // --------------- stage thread ----------------------
+
+  public void run()
+  {
+    while (true) {
+      DepthInput in;
+      try {
+        in = ready.take();
+      }
+      catch (InterruptedException e)
+      {  return;  }
+
+      colour(in);
+      free.offer(in);
+      view.repaint();
+    }
+  }  // end of run()
+
+
+  private void colour(DepthInput in)
+  // colours in into the back image, then makes that the newest
+  {
+    // only made while recording, as this is the one thing it would allocate
+    PipelineEvents.DepthColoured event = null;
+    if (COLOURED.isEnabled()) {
+      event = new PipelineEvents.DepthColoured();
+      event.begin();
+    }
+    long time = System.nanoTime();
+    in.depthBuf.rewind();
+    in.usersBuf.rewind();
+    if (in.step == 1)
+      depths.process(in.depthBuf, in.usersBuf, back.bytes);
+    else
+      depths.processCoarse(in.depthBuf, in.usersBuf, back.bytes, width, in.step);
+
+    back.seq = in.id;
+    back = latest.getAndSet(back);
+    QualityGovernor.coloured(System.nanoTime() - time);
+
+    if (event != null && event.shouldCommit()) {
+      event.frame = in.id;
+      event.pixels = in.depth.length / (in.step * in.step);
+      event.userPixels = depths.getUserPixels();
+      event.commit();
+    }
+  }  // end of colour()
+
+
+
+  // --------------- painting ----------------------
+
+  public DepthFrame newest(DepthFrame front)
+  /* the newest finished image, in exchange for front, the one the
+     painter had; or front itself if there's nothing newer */
+  {
+    if (latest.get().seq > front.seq)
+      return latest.getAndSet(front);   // may be newer still; never older
+    return front;
+  }  // end of newest()
+
+}  // end of DepthStage class
@@ -0,0 +1,21 @@
+/** FrameTag
+ *
+ *  Identifies the depth frame a gesture was seen in: its number, counted
+ *  from 1 as frames arrive, and the System.nanoTime() at which the sensor
+ *  handed it over. Passed along with each gesture so the time from the
+ *  frame to the paint showing its effect can be measured.
+ **/
+
+public final class FrameTag {
+	public final long id;
+	public final long nanos;
+
+	public FrameTag(long id, long nanos) {
+		this.id = id;
+		this.nanos = nanos;
+	}
+
+	public String toString() {
+		return "frame " + id;
+	}
+}
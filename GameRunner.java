@@ -8,6 +8,8 @@ import java.awt.*;
 import java.io.*;
 import javax.swing.*;
 import java.awt.event.*;
+import java.util.function.*;
+import java.util.zip.CRC32;
 
 import org.OpenNI.*;
 
@@ -18,9 +20,16 @@ public class GameRunner extends JPanel implements GesturesWatcher, ActionListene
 	private int width;
 	private int height;
 
-	private Level[] levels;
-	private int level = 0;
-	private boolean done = false;
+	// levels are loaded as they are reached, see LevelLibrary
+	private LevelLibrary levels;
+	private File[] files;
+	private volatile Level current;
+	private volatile int level = 0;
+	private volatile boolean done = false;
+
+	// set while the next level loads on the loader thread, having not been
+	// prefetched in time; input is ignored and a placeholder shown meanwhile
+	private volatile boolean loading = false;
 
 	// timer to trigger movement while user is facing one direction
 	boolean movingRight = false;
@@ -28,50 +37,297 @@ public class GameRunner extends JPanel implements GesturesWatcher, ActionListene
 	private Timer timer;
 	int timerSpeed = 600;
 
+	// checks levels in the background, so impossible ones can be skipped
+	private LevelValidator validator;
+
+	// suggests the next move once the player has been stuck for a while
+	private HintEngine hints;
+	private Timer hintTimer;
+	int hintDelay = 15000;
+	private volatile long lastMove;
+	private volatile boolean hintShown;
+
+	private final Font hintFont = new Font("SansSerif", Font.BOLD, 18);
+	private final Font doneFont = new Font("SansSerif", Font.BOLD, 32);
+
+	// keyboard commands, indexed as they are stored in input logs, and
+	// the keys for them
+	static final String[] COMMANDS = { "undo", "redo", "restart", "rewind", "forward" };
+	static final int[] KEYS = { KeyEvent.VK_U, KeyEvent.VK_Y, KeyEvent.VK_R,
+								KeyEvent.VK_PAGE_UP, KeyEvent.VK_PAGE_DOWN };
+
+	// false when driven by InputReplay: no timers, hints or recording
+	private boolean live;
+	private InputLog recorder;
+
+	// latest sensor frame, as the logical time of what is recorded
+	private long frame;
+
+	// in a replay, the levels the recorded game went to, in order
+	private IntSupplier recordedLevels;
+
+	// game state is changed from the sensor thread, the EDT and the level
+	// watcher; each change holds this lock for a single move or swap only.
+	// Painting only takes it to copy what is on screen (see draw()).
+	private final Object lock = new Object();
+
+	// set when a change asks for a repaint, so pose() knows the gesture
+	// will show on screen
+	private boolean repaintAsked;
+
 
 	public GameRunner() {
+		this(true);
+	}
+
+	GameRunner(boolean live) {
 		this.width  = 640;
 		this.height = 480;
+		this.live = live;
 
 		timer = new Timer(timerSpeed, this);
+
+		if(live) {
+			// a new hint only needs painting if one is on screen or due;
+			// otherwise hintTimer shows it when the time comes. Nobody to
+			// show it to while idle; the next move repaints
+			hints = new HintEngine(new Runnable() {
+				public void run() {
+					boolean due = hintShown
+							|| System.currentTimeMillis() - lastMove >= hintDelay;
+					if(due && !IdleMode.isIdle()) {
+						repaint();
+					}
+				}
+			});
+			hintTimer = new Timer(hintDelay, new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					if(!IdleMode.isIdle()) {
+						repaint();
+					}
+				}
+			});
+			hintTimer.setRepeats(false);
+		}
 		
 		createLevels();
+		moved();
+
+		if(live) {
+			bindKeys();
+			startRecording();
+			startWatching();
+		}
 	}
 
-	private void createLevels() {
-		setBackground(Color.BLACK);
+	// reload level files as they are edited; not while recording, as a
+	// replay could not reproduce the edits
+	private void startWatching() {
+		if(recorder != null) {
+			Log.info("Not watching levels for changes while recording");
+			return;
+		}
 
-		// get all files from "levels" directory with .lvl extension
-		// create and parse a new level for each
-		File dir = new File("levels");
-		File[] files = dir.listFiles(new FilenameFilter() {
-			@Override
-			public boolean accept(File dir, String name) {
-				return name.endsWith(".lvl");
+		try {
+			new LevelWatcher(new File("levels"), levels, this);
+		} catch(IOException e) {
+			Log.warn("Unable to watch levels for changes: {}", e);
+		}
+	}
+
+	// called on the watcher thread with a level it has just loaded again,
+	// or null if the edited file no longer loads
+	void levelReloaded(File file, Level fresh) {
+		validator.revalidate(file);
+
+		synchronized(lock) {
+			if(done || !file.equals(files[level])) {
+				return;   // the library already has the new version
+			}
+			if(fresh == null) {
+				Log.warn("Keeping the old version of {}", file.getName());
+				return;
+			}
+
+			if(!fresh.keepPlayer(current)) {
+				Log.info("Old position is not valid in the new level, starting over");
+			}
+			current = fresh;
+			moved();
+		}
+		repaint();
+	}
+
+	// called on the watcher thread after a new file was added to the library
+	void levelAdded(File file) {
+		validator.validate(new File[] { file });
+
+		synchronized(lock) {
+			// indices after the new file have moved up by one
+			File playing = done ? null : files[level];
+			files = levels.files();
+			if(playing != null) {
+				level = levels.indexOf(playing);
+			}
+		}
+	}
+
+	// keyboard controls for whoever is running the installation:
+	// U undo, Y redo, R restart level, Page Up/Down scrub back/forward
+	private void bindKeys() {
+		for(int i=0; i<KEYS.length; i++) {
+			bindKey(KEYS[i], i);
+		}
+	}
+	private void bindKey(int key, final int command) {
+		getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(key, 0), COMMANDS[command]);
+		getActionMap().put(COMMANDS[command], new AbstractAction() {
+			public void actionPerformed(ActionEvent e) {
+				command(command);
 			}
 		});
-		
-		levels = new Level[files.length];
+	}
+
+	// record input to the file named by -Dblockdude.record, for InputReplay
+	private void startRecording() {
+		String path = System.getProperty("blockdude.record");
+		if(path == null) {
+			return;
+		}
+
+		try {
+			recorder = new InputLog(new File(path), files);
+			Log.info("Recording input to {}", path);
+		} catch(IOException e) {
+			Log.warn("Unable to record input to {}: {}", path, e);
+			return;
+		}
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				recorder.close(stateHash());
+			}
+		});
+	}
 
-		for(int i=0; i<files.length; i++) {
-			levels[i] = new Level(files[i], this.width, this.height);
+	void command(int index) {
+		PipelineEvents.Move event = new PipelineEvents.Move();
+		event.begin();
+		synchronized(lock) {
+			repaintAsked = false;
+			doCommand(index);
+			commitMove(event, 0, "key", COMMANDS[index]);
 		}
 	}
+	private void doCommand(int index) {
+		if(loading) {
+			return;   // not recorded either, so replays match
+		}
+		if(recorder != null) {
+			recorder.key(frame, index);
+		}
+		if(done) {
+			return;
+		}
+
+		String command = COMMANDS[index];
+		if(command.equals("undo")) {
+			current.undo();
+		} else if(command.equals("redo")) {
+			current.redo();
+		} else if(command.equals("restart")) {
+			current.restart();
+		} else if(command.equals("rewind")) {
+			current.rewind(-10);
+		} else if(command.equals("forward")) {
+			current.rewind(10);
+		}
+
+		moved();
+		repaintLevel();
+	}
+
+	// for ActiveRenderer, whose canvas has the focus instead of this panel
+	KeyListener keyListener() {
+		return new KeyAdapter() {
+			public void keyPressed(KeyEvent e) {
+				for(int i=0; i<KEYS.length; i++) {
+					if(KEYS[i] == e.getKeyCode()) {
+						command(i);
+					}
+				}
+			}
+		};
+	}
+
+	private void createLevels() {
+		setBackground(Color.BLACK);
+
+		// levels are loaded on demand from the "levels" directory, in
+		// name order, from their compiled .lvlc files when up to date
+		File dir = new File("levels");
+		levels = new LevelLibrary(dir, this.width, this.height);
+		files = levels.files();
+
+		// start on the first level that loads
+		level = -1;
+		current = null;
+		findLevel(0);
+
+		// solve each level off the startup path; results are cached by
+		// content hash so unchanged levels are only solved once
+		validator = new LevelValidator(new File(dir, ".solutions"), this.width, this.height);
+		validator.validate(files);
+	}
 	
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
-		Graphics2D g2d = (Graphics2D) g;
+		draw((Graphics2D) g);
+	}
 
-		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-								RenderingHints.VALUE_ANTIALIAS_ON);
+	// for ActiveRenderer: draws the game onto its frame, which it has
+	// already cleared
+	public void render(Graphics2D g2d) {
+		draw(g2d);
+	}
 
-		if(!done) {
-			levels[level].draw(g2d);
+	// copies what is on screen while holding the game lock, so a move is
+	// never drawn half done, then draws without it; the copy is of the
+	// screen only, so a move never waits on more than that
+	private void draw(Graphics2D g2d) {
+		PipelineEvents.Paint event = new PipelineEvents.Paint();
+		event.begin();
+		long time = System.nanoTime();
+		Level current;
+		synchronized(lock) {
+			current = this.current;
+			if(current != null) {
+				current.snapshot();
+			}
+			MotionToPhoton.taken();
+		}
+
+		// tiles come antialiased from TileSprites; only text needs it here,
+		// unless frames are running late (see QualityGovernor)
+		if(QualityGovernor.antialias()) {
+			g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+									RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 		} else {
-			Font font = new Font("SansSerif", Font.BOLD, 32);
-			FontMetrics fm = g2d.getFontMetrics(font);
+			g2d.setRenderingHint(RenderingHints.KEY_RENDERING,
+									RenderingHints.VALUE_RENDER_SPEED);
+		}
+
+		if(loading) {
+			g2d.setFont(hintFont);
+			g2d.setPaint(Color.WHITE);
+			g2d.drawString("Loading the next level...", 10, 24);
+		} else if(!done) {
+			current.draw(g2d);
+			drawHint(g2d);
+		} else {
+			FontMetrics fm = g2d.getFontMetrics(doneFont);
 			
-			g2d.setFont(font);
+			g2d.setFont(doneFont);
 			g2d.setPaint(Color.WHITE);
 
 			String title = "Congratulations!";
@@ -82,77 +338,308 @@ public class GameRunner extends JPanel implements GesturesWatcher, ActionListene
 			g2d.drawString(subtitle, this.width/2 - subtitleW/2, this.height/2);
 
 		}
+		MotionToPhoton.painted();
+		QualityGovernor.painted(PipelineStats.lap(PipelineStats.Stage.GAME_PAINT, time) - time);
+
+		if(event.shouldCommit()) {
+			Rectangle clip = g2d.getClipBounds();
+			event.panel = "game";
+			event.width = clip == null ? width : clip.width;
+			event.height = clip == null ? height : clip.height;
+			event.commit();
+		}
 	}
+
+	// show the hint engine's suggestion if nothing has happened for a while
+	private void drawHint(Graphics2D g2d) {
+		Move hint = hints == null ? null : hints.getHint();
+		hintShown = hint != null && System.currentTimeMillis() - lastMove >= hintDelay;
+		if(!hintShown) {
+			return;
+		}
+
+		g2d.setFont(hintFont);
+		g2d.setPaint(Color.YELLOW);
+		g2d.drawString("Hint: " + HintEngine.describe(hint), 10, 24);
+	}
+
+	// called after anything that changes the level, so the hint engine
+	// works on the new position and the hint is hidden again
+	private void moved() {
+		lastMove = System.currentTimeMillis();
+		if(!live) {
+			return;
+		}
+
+		if(!done) {
+			hints.update(current);
+		}
+		hintTimer.restart();
+	}
+
+	// repaints only the tiles the last change touched, or everything if
+	// the level scrolled or a hint has to be cleared
+	private void repaintLevel() {
+		Rectangle area = current.takeDirty();
+		if(hintShown) {
+			repaint();
+		} else if(area != null) {
+			repaint(area);
+		} else {
+			return;
+		}
+		repaintAsked = true;
+	}
+
+	// the movement timer only runs in the live game; replays tick it
+	// themselves from the log
+	private void startTimer() {
+		if(live) {
+			timer.restart();
+		}
+	}
+
+	// checksum of the game's progress and the current board, used to
+	// confirm that a replay ends exactly where the recording did
+	public long stateHash() {
+		CRC32 crc = new CRC32();
+		updateInt(crc, level);
+		updateInt(crc, (done ? 1 : 0) | (movingLeft ? 2 : 0) | (movingRight ? 4 : 0));
+
+		if(current != null) {
+			Board board = current.getBoard();
+			byte[] cells = board.cells();
+			crc.update(cells, 0, cells.length);
+			updateInt(crc, board.getPlayer());
+			updateInt(crc, board.getHeight());
+			updateInt(crc, board.isCarrying() ? 1 : 0);
+		}
+
+		return crc.getValue();
+	}
+	private static void updateInt(CRC32 crc, int value) {
+		for(int shift = 24; shift >= 0; shift -= 8) {
+			crc.update(value >>> shift);
+		}
+	}
+
+	File[] getLevelFiles() {
+		return files;
+	}
+
+	// progress, for MetricsServer; read without the lock, so they may be
+	// a move behind
+	int getLevel() {
+		return level;
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	long getMoves() {
+		Level current = this.current;
+		return current == null ? 0 : current.getMoves();
+	}
+
+	// for InputReplay: each time a level is finished, the game goes to
+	// the next index levels gives instead of choosing one itself
+	void replayLevels(IntSupplier levels) {
+		recordedLevels = levels;
+	}
+
 	public Dimension getPreferredSize() {
 		return new Dimension(this.width, this.height);
 	}
 
 
+	// moves to the first playable level at or after index next, loading
+	// it on the calling thread if need be; returns false if there are
+	// none left
+	private boolean findLevel(int next) {
+		next = loadPlayable(next);
+		if(next < levels.size()) {
+			level = next;
+			current = levels.get(next);
+			return true;
+		}
+		done = current == null;
+		return false;
+	}
+
+	// index of the first playable level at or after next that loads,
+	// loading them on the calling thread; levels.size() if there is none
+	private int loadPlayable(int next) {
+		for(next = skipUnplayable(next); next < levels.size(); next = skipUnplayable(next+1)) {
+			if(levels.get(next) != null) {
+				break;
+			}
+		}
+		return next;
+	}
+
+	// index of the first level at or after next that the validator
+	// hasn't found unplayable
+	private int skipUnplayable(int next) {
+		File[] files = this.files;
+		for(; next < files.length; next++) {
+			if(validator == null || !validator.isUnplayable(files[next])) {
+				break;
+			}
+			Log.warn("Skipping unplayable level {}", files[next].getName());
+		}
+		return next;
+	}
+
 	public void nextLevel() {
-		if(!done) {
-			if(level < levels.length-1) {
-				level++;
-				timer.stop();
-				repaint();
+		if(!done && !loading) {
+			timer.stop();
+
+			// levels are prefetched, but a slow disk or a quick player can
+			// get ahead; loading must not hold up the sensor thread
+			int next = skipUnplayable(level + 1);
+			if(live && next < levels.size() && !levels.isLoaded(next)) {
+				loading = true;
+				levels.later(new Runnable() {
+					public void run() {
+						loadNextLevel();
+					}
+				});
+			} else if(recordedLevels != null) {
+				foundLevel(recordedLevel());
 			} else {
-				done = true;
-				timer.stop();
-				movingLeft = false;
-				movingRight = false;
-				repaint();
+				foundLevel(findLevel(level + 1));
+			}
+			repaint();
+			repaintAsked = true;
+		}
+	}
+
+	// on the loader thread: loads the next level without the game lock,
+	// then switches to it with it
+	private void loadNextLevel() {
+		int next = loadPlayable(level + 1);
+		Level l = next < levels.size() ? levels.get(next) : null;
+
+		File file = l == null ? null : levels.file(next);
+		synchronized(lock) {
+			loading = false;
+			if(l != null) {
+				level = levels.indexOf(file);   // files may have been added
+				current = l;
 			}
+			foundLevel(l != null);
+		}
+		repaint();
+	}
+
+	// in a replay, goes to the level the recorded game went to, whatever
+	// the checks have found since; false if it had none left
+	private boolean recordedLevel() {
+		int next = recordedLevels.getAsInt();
+		Level l = next < levels.size() ? levels.get(next) : null;
+		if(l == null) {
+			return false;
+		}
+		level = next;
+		current = l;
+		return true;
+	}
+
+	private void foundLevel(boolean found) {
+		if(recorder != null) {
+			recorder.level(frame, found ? level : files.length);
+		}
+		if(found) {
+			moved();
+		} else {
+			done = true;
+			movingLeft = false;
+			movingRight = false;
 		}
 	}
 	
-	// called whenever a gesture is detected
-	public void pose(int userID, GestureName gest, boolean isActivated) {
-		if (!done && levels[level] != null && levels[level].checkWin()) {
+	// called whenever a gesture is detected; if it changes what is on
+	// screen, the time from its frame to the next paint is recorded
+	public void pose(int userID, GestureName gest, boolean isActivated, FrameTag tag) {
+		MetricsServer.gesture(gest, isActivated);
+		PipelineEvents.Move event = new PipelineEvents.Move();
+		event.begin();
+		long time = System.nanoTime();
+		synchronized(lock) {
+			if(tag != null) {
+				frame = tag.id;
+			}
+			repaintAsked = false;
+			handlePose(userID, gest, isActivated);
+			if(repaintAsked && tag != null) {
+				MotionToPhoton.acted(gest, tag);
+			}
+			commitMove(event, tag == null ? 0 : tag.id, "gesture", gest.name());
+		}
+		PipelineStats.lap(PipelineStats.Stage.GAME, time);
+	}
+	private void handlePose(int userID, GestureName gest, boolean isActivated) {
+		if(loading) {
+			return;   // not recorded either, so replays match
+		}
+		if(recorder != null) {
+			recorder.pose(frame, userID, gest, isActivated);
+		}
+
+		if (!done && current.checkWin()) {
 			nextLevel();
 			return;
 		} else if(!done) {
 			if (isActivated) {
 				if(gest.equals(GestureName.TURN_LEFT)) { // MOVE LEFT
-					System.out.println("Moving left");
-					levels[level].moveLeft();
-					if(levels[level].checkWin()) {
+					Log.debug("Moving left");
+					current.moveLeft();
+					if(current.checkWin()) {
 						nextLevel();
 					} else {
+						moved();
 						movingLeft = true;
-						repaint();
-						timer.restart();
+						repaintLevel();
+						startTimer();
 					}
 				} else if(gest.equals(GestureName.TURN_RIGHT)) { // MOVE RIGHT
-					System.out.println("Moving right");
-					levels[level].moveRight();
-					if(levels[level].checkWin()) {
+					Log.debug("Moving right");
+					current.moveRight();
+					if(current.checkWin()) {
 						nextLevel();
 					} else {
+						moved();
 						movingRight = true;
-						repaint();
-						timer.restart();
+						repaintLevel();
+						startTimer();
 					}
 				} else if(gest.equals(GestureName.RH_LIFT)) { // LIFT RIGHT
-					levels[level].liftBlockRight();
-					repaint();
+					current.liftBlockRight();
+					moved();
+					repaintLevel();
 				} else if(gest.equals(GestureName.LH_LIFT)) { // LIFT LEFT
-					levels[level].liftBlockLeft();
-					repaint();
+					current.liftBlockLeft();
+					moved();
+					repaintLevel();
 				} else if(gest.equals(GestureName.RH_EXTEND)) { // DROP RIGHT
-					levels[level].placeBlockRight();
-					repaint();
+					current.placeBlockRight();
+					moved();
+					repaintLevel();
 				} else if(gest.equals(GestureName.LH_EXTEND)) { // DROP LEFT
-					levels[level].placeBlockLeft();
-					repaint();
+					current.placeBlockLeft();
+					moved();
+					repaintLevel();
 				} else {
 					//System.out.println(gest + " " + userID + " on");
 				}
 			} else {
 				if(gest.equals(GestureName.TURN_LEFT)) { // MOVE LEFT
-					System.out.println("Stopped moving left");
+					Log.debug("Stopped moving left");
 					movingLeft = false;
 					timer.stop();
 				} else if(gest.equals(GestureName.TURN_RIGHT)) { // MOVE RIGHT
-					System.out.println("Stopped moving right");
+					Log.debug("Stopped moving right");
 					movingRight = false;
 					timer.stop();
 				}
@@ -162,19 +649,63 @@ public class GameRunner extends JPanel implements GesturesWatcher, ActionListene
 	
 	// timer callback, used to continually move while user is turned to side
 	public void actionPerformed(ActionEvent e) {
-		if(!done && levels[level].checkWin()) {
+		PipelineEvents.Move event = new PipelineEvents.Move();
+		event.begin();
+		synchronized(lock) {
+			repaintAsked = false;
+			tick();
+			commitMove(event, 0, "tick", movingRight ? "right" : movingLeft ? "left" : null);
+		}
+	}
+
+	// records a gesture, tick or key as a flight recorder event; action
+	// is null for a tick while standing still
+	private void commitMove(PipelineEvents.Move event, long frame, String source, String action) {
+		if(event.shouldCommit()) {
+			event.frame = frame;
+			event.source = source;
+			event.action = action == null ? "none" : action;
+			event.level = level;
+			event.changed = repaintAsked;
+			event.commit();
+		}
+	}
+	private void tick() {
+		if(loading) {
+			return;
+		}
+
+		// nobody has been in view for a while, so nobody is turning: stop
+		// walking as if they had turned back, recorded like any gesture
+		if(IdleMode.isIdle()) {
+			if(movingLeft) {
+				handlePose(0, GestureName.TURN_LEFT, false);
+			}
+			if(movingRight) {
+				handlePose(0, GestureName.TURN_RIGHT, false);
+			}
+			timer.stop();
+			return;
+		}
+
+		if(recorder != null) {
+			recorder.tick(frame);
+		}
+
+		if(!done && current.checkWin()) {
 			nextLevel();
 			return;
 		}
 
 		if( !done ) {
 			if( movingRight ) {
-				levels[level].moveRight();
+				current.moveRight();
 			} else if( movingLeft ) {
-				levels[level].moveLeft();
+				current.moveLeft();
 			}
+			moved();
 
-			repaint();
+			repaintLevel();
 		}
 	}
 
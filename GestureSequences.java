@@ -42,6 +42,11 @@ public class GestureSequences
   private final static GestureName[] LH_EXTEND = 
   		{ GestureName.LH_BENT, GestureName.LH_STRAIGHT };
 
+  private final static int MAX_SEQ_LENGTH = 32;
+      /* gestures kept per user; older ones are dropped, since gestures that
+         never complete a sub-sequence would otherwise pile up for as long
+         as the user is tracked */
+
   private GesturesWatcher watcher;
       // object that is notified of a complex gesture by calling its pose() method
 
@@ -68,25 +73,28 @@ public class GestureSequences
   {
     ArrayList<GestureName> gestsSeq = userGestSeqs.get(userID);
     if (gestsSeq == null)
-      System.out.println("No gestures sequence for user " + userID);
-    else
+      Log.warn("No gestures sequence for user {}", userID);
+    else {
+      if (gestsSeq.size() == MAX_SEQ_LENGTH)
+        gestsSeq.remove(0);    // forget the oldest
       gestsSeq.add(gest);
+    }
   }
 
 
 
-  public void checkSeqs(int userID)
+  public void checkSeqs(int userID, FrameTag tag)
   /* look for gesture sub-sequences in the user's full gesture sequence,
-     and notify the watcher */
+     and notify the watcher, passing on the frame being checked */
   {
     ArrayList<GestureName> gestsSeq = userGestSeqs.get(userID);
     if (gestsSeq != null)
-      checkSeq(userID, gestsSeq);
+      checkSeq(userID, gestsSeq, tag);
   }
 
 
 
-  private void checkSeq(int userID, ArrayList<GestureName> gestsSeq)
+  private void checkSeq(int userID, ArrayList<GestureName> gestsSeq, FrameTag tag)
   /* look for gesture sub-sequences. If one is found, then the part
      of the user's gesture sequence containing the sub-sequence is deleted.
   */
@@ -96,32 +104,49 @@ public class GestureSequences
 	// look for one-handed lifts
 	int endPos = findSubSeq(gestsSeq, RH_LIFT);
   	if (endPos != -1) {
-  		watcher.pose(userID, GestureName.RH_LIFT, true);
+  		matched(userID, GestureName.RH_LIFT, tag);
   		purgeSeq(gestsSeq, endPos);
   	}
 	
 	endPos = findSubSeq(gestsSeq, LH_LIFT);
   	if (endPos != -1) {
-  		watcher.pose(userID, GestureName.LH_LIFT, true);
+  		matched(userID, GestureName.LH_LIFT, tag);
   		purgeSeq(gestsSeq, endPos);
   	}
 
   	// look for extension gestures
 	endPos = findSubSeq(gestsSeq, RH_EXTEND);
   	if (endPos != -1) {
-  		watcher.pose(userID, GestureName.RH_EXTEND, true);
+  		matched(userID, GestureName.RH_EXTEND, tag);
   		purgeSeq(gestsSeq, endPos);
   	}
 
   	endPos = findSubSeq(gestsSeq, LH_EXTEND);
   	if (endPos != -1) {
-  		watcher.pose(userID, GestureName.LH_EXTEND, true);
+  		matched(userID, GestureName.LH_EXTEND, tag);
   		purgeSeq(gestsSeq, endPos);
   	}
   }  // end of checkSeq()
 
 
 
+  private void matched(int userID, GestureName gest, FrameTag tag)
+  /* tell the watcher a complex gesture was found, recording it (and
+     the watcher's handling) as a flight recorder event */
+  {
+    PipelineEvents.Sequence event = new PipelineEvents.Sequence();
+    event.begin();
+    watcher.pose(userID, gest, true, tag);
+    if (event.shouldCommit()) {
+      event.frame = tag.id;
+      event.user = userID;
+      event.gesture = gest.name();
+      event.commit();
+    }
+  }  // end of matched()
+
+
+
   private int findSubSeq(ArrayList<GestureName> gestsSeq, GestureName[] gests)
   /* Try to find all the gests[] array GestureName objects inside the list,
      and return the position *after* the last object, or -1. The array elements
@@ -162,13 +187,10 @@ public class GestureSequences
   private void printSeq(ArrayList<GestureName> gestsSeq)
   {
     if (gestsSeq.isEmpty())
-      System.out.println("Sequence is empty");
-    else {
-      System.out.print("Sequence: ");
-      for(GestureName gest : gestsSeq)
-        System.out.print(gest + " ");
-      System.out.println();
-    }
+      Log.debug("Sequence is empty");
+    else
+      Log.debug("Sequence: {}", new ArrayList<GestureName>(gestsSeq));
+         // a copy, as it is printed later
   }  // end of printSeq() 
 
 
@@ -4,9 +4,12 @@
 
 /* used to ensure that a watcher class can be contacted when
    a skeleton gesture starts (or stops)
+
+   tag is the depth frame the gesture was seen in, or null if it
+   didn't come from the sensor (e.g. a replayed log)
 */
 
 public interface GesturesWatcher 
 {
-  void pose(int userID, GestureName gest, boolean isActivated);
+  void pose(int userID, GestureName gest, boolean isActivated, FrameTag tag);
 }
@@ -0,0 +1,172 @@
+/** HintEngine
+ *
+ *  Works out the next move toward the door on a background thread.
+ *
+ *  GameRunner hands over the position after every move: just the cells
+ *  the journal has seen change, so it costs the game thread nothing like
+ *  a copy of a big level. The worker keeps its own copy of the board,
+ *  taken once per level on its own thread, and brings it up to date from
+ *  each position. The search always runs on the newest position and is
+ *  cut off by a time and CPU budget,
+ *  so a hint is offered even for levels too big to solve outright. When
+ *  the player follows the hint, the rest of the previous answer is reused
+ *  instead of searching again.
+ **/
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class HintEngine implements Runnable {
+	private static final int MAX_STATES = 200000;
+
+	// search budget per move, from -Dblockdude.hint.ms and -Dblockdude.hint.cpu
+	private long maxNanos;
+	private long maxCpuNanos;
+
+	// latest position, replaced (never queued) if the search is behind
+	private AtomicReference<Update> pending = new AtomicReference<Update>();
+	private Thread worker;
+
+	// worker thread only: its copy of the level's board, and the position
+	// the copy is at
+	private Level level = null;
+	private Board board = null;
+	private MoveJournal.Position at = null;
+
+	// called from the worker thread whenever the hint changes
+	private Runnable listener;
+
+	// last answer, with the state expected after each of its moves
+	private List<Move> path = new ArrayList<Move>();
+	private List<String> expected = new ArrayList<String>();
+	private boolean solved = false;
+
+	private volatile Move hint = null;
+
+	private static class Update {
+		final Level level;
+		final MoveJournal.Position position;
+
+		Update(Level level, MoveJournal.Position position) {
+			this.level = level;
+			this.position = position;
+		}
+	}
+
+
+	public HintEngine(Runnable listener) {
+		this.listener = listener;
+
+		maxNanos = Long.getLong("blockdude.hint.ms", 250) * 1000000L;
+		maxCpuNanos = Long.getLong("blockdude.hint.cpu", 200) * 1000000L;
+
+		worker = new Thread(this, "hint-engine");
+		worker.setDaemon(true);
+		worker.setPriority(Thread.MIN_PRIORITY);
+		worker.start();
+	}
+
+	// called after every move; only notes the position and wakes the worker
+	public void update(Level level) {
+		pending.set(new Update(level, level.getPosition()));
+		LockSupport.unpark(worker);
+	}
+
+	// next move to suggest, or null if none is known yet
+	public Move getHint() {
+		return hint;
+	}
+
+	public static String describe(Move move) {
+		switch(move) {
+			case LEFT:        return "Walk left";
+			case RIGHT:       return "Walk right";
+			case LIFT_LEFT:   return "Lift the block on your left";
+			case LIFT_RIGHT:  return "Lift the block on your right";
+			case PLACE_LEFT:  return "Put the block down on your left";
+			case PLACE_RIGHT: return "Put the block down on your right";
+			default:          return "";
+		}
+	}
+
+
+	public void run() {
+		while(true) {
+			Update update = pending.getAndSet(null);
+			if(update == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			if(!catchUp(update)) {
+				continue;
+			}
+
+			String key = LevelSolver.encode(board);
+			if(!followedHint(key)) {
+				search(board);
+			}
+
+			Move next = path.isEmpty() ? null : path.get(0);
+			if(next != hint) {
+				hint = next;
+				listener.run();
+			}
+		}
+	}
+
+	// brings the worker's copy of the board to the handed over position;
+	// false if the board changed while a new level was being copied, in
+	// which case the move that changed it hands over a newer position
+	private boolean catchUp(Update update) {
+		MoveJournal.Position pos = update.position;
+		if(update.level != level) {
+			Level live = update.level;
+			long edits = live.getEdits();
+			if(edits != pos.edits) {
+				return false;
+			}
+			Board copy = new Board(live.getBoard());
+			if(live.getEdits() != edits) {
+				return false;
+			}
+
+			level = live;
+			board = copy;
+		} else {
+			MoveJournal.apply(at, pos, board);
+		}
+		at = pos;
+		return true;
+	}
+
+	// drop the first move of the last answer if the player just made it
+	private boolean followedHint(String key) {
+		if(expected.isEmpty() || !expected.get(0).equals(key)) {
+			return false;
+		}
+
+		path.remove(0);
+		expected.remove(0);
+
+		// a complete answer can be followed to the end; a partial one
+		// is only good for a step before searching further
+		return solved && !path.isEmpty();
+	}
+
+	private void search(Board board) {
+		LevelSolver.Result result =
+			LevelSolver.solve(board, MAX_STATES, maxNanos, maxCpuNanos);
+
+		solved = result.isSolved();
+		path = result.path != null ? new ArrayList<Move>(result.path) : new ArrayList<Move>();
+
+		// replay the answer to know which states mean "hint followed"
+		expected = new ArrayList<String>();
+		Board step = new Board(board);
+		for(Move move : path) {
+			move.apply(step);
+			expected.add(LevelSolver.encode(step));
+		}
+	}
+}
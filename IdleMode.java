@@ -0,0 +1,76 @@
+/** IdleMode
+ *
+ *  Whether anybody is in front of the sensor. Once nobody has been in
+ *  view for -Dblockdude.idle.secs seconds (60; 0 never idles), the game
+ *  goes idle: TrackerPanel colours only a coarse depth image a few times
+ *  a second and doesn't look for gestures, and ActiveRenderer presents at
+ *  the same rate. The sensor itself keeps running, since it is what
+ *  notices somebody arriving.
+ *
+ *  Seeing a user, or Skeletons' NewUserObserver firing, makes it active
+ *  again straight away, so the frame that brought them is processed in
+ *  full. Time spent in each mode is logged at each change and served by
+ *  MetricsServer.
+ **/
+
+public class IdleMode {
+	private static final int SENSOR_FPS = 30;   // as TrackerPanel asks for
+
+	static final int FPS = Math.max(1, Integer.getInteger("blockdude.idle.fps", 5));
+	static final int EVERY = Math.max(1, SENSOR_FPS / FPS);   // sensor frames per idle frame
+	static final int STEP = Math.max(1, Integer.getInteger("blockdude.idle.step", 4));   // pixels per sample, each way
+	private static final long DELAY = Integer.getInteger("blockdude.idle.secs", 60) * 1000000000L;
+
+	private static volatile boolean idle = false;
+	private static long lastSeen = System.nanoTime();   // of a user
+	private static long since = lastSeen;               // the last change of mode
+	private static final long[] spent = new long[2];    // ns active, idle, before that
+
+
+	public static boolean isIdle() {
+		return idle;
+	}
+
+	// the sensor thread calls this each frame with the users in view
+	public static synchronized boolean frame(int users, long now) {
+		if(users > 0) {
+			lastSeen = now;
+			if(idle) {
+				change(false, now);
+			}
+		} else if(!idle && DELAY > 0 && now - lastSeen >= DELAY) {
+			change(true, now);
+		}
+		return idle;
+	}
+
+	// a new user has been detected
+	public static synchronized void userFound() {
+		lastSeen = System.nanoTime();
+		if(idle) {
+			change(false, lastSeen);
+		}
+	}
+
+	// total seconds spent idle, or active
+	public static synchronized double seconds(boolean inIdle) {
+		long nanos = spent[inIdle ? 1 : 0];
+		if(idle == inIdle) {
+			nanos += System.nanoTime() - since;
+		}
+		return nanos / 1000000000.0;
+	}
+
+	private static void change(boolean toIdle, long now) {
+		long nanos = now - since;
+		spent[idle ? 1 : 0] += nanos;
+		since = now;
+		idle = toIdle;
+
+		if(toIdle) {
+			Log.info("Nobody in view, idling after {} s active", nanos / 1000000000L);
+		} else {
+			Log.info("User in view, active after {} s idle", nanos / 1000000000L);
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/** InputLog
+ *
+ *  Compact binary log of everything that drives the game: gesture events
+ *  passed to GameRunner.pose(), movement timer ticks and keyboard commands,
+ *  and the level the game went to each time one was finished.
+ *
+ *  The log starts with the names and content hashes of the levels played,
+ *  then one record per event: a type byte, its logical time, and any
+ *  arguments. The logical time is the number of the sensor frame the
+ *  event came from (or the latest one, for ticks and keys), as a varint
+ *  counting from the previous record's. Levels are recorded rather than
+ *  worked out again on replay, as which are skipped depends on how far
+ *  the background checks had got. When recording stops, the hash of the
+ *  final game state is written so InputReplay can check that replaying
+ *  gives the same result.
+ **/
+
+import java.io.*;
+
+public class InputLog {
+	static final int MAGIC = 0x42444C47;   // "BDLG"
+	static final int VERSION = 2;
+
+	// record types
+	static final int TICK = 0;
+	static final int POSE = 1;
+	static final int KEY  = 2;
+	static final int END  = 3;
+	static final int LEVEL = 4;
+
+	private DataOutputStream out;
+	private long lastFrame;
+	private boolean closed = false;
+
+
+	// starts a new log, listing the levels in the order the game uses them
+	public InputLog(File file, File[] levels) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		writeVarint(out, levels.length);
+		for(File level : levels) {
+			out.writeUTF(level.getName());
+			out.writeUTF(LevelValidator.contentHash(level));
+		}
+	}
+
+	public synchronized void pose(long frame, int userID, GestureName gest, boolean isActivated) {
+		if(begin(POSE, frame)) {
+			try {
+				out.writeByte(gest.ordinal());
+				out.writeByte(isActivated ? 1 : 0);
+				writeVarint(out, userID);
+			} catch(IOException e) {
+				failed(e);
+			}
+		}
+	}
+
+	public synchronized void tick(long frame) {
+		begin(TICK, frame);
+	}
+
+	public synchronized void key(long frame, int command) {
+		if(begin(KEY, frame)) {
+			try {
+				out.writeByte(command);
+			} catch(IOException e) {
+				failed(e);
+			}
+		}
+	}
+
+	// the game has moved on to level index, or has none left if index is
+	// past the last one
+	public synchronized void level(long frame, int index) {
+		if(begin(LEVEL, frame)) {
+			try {
+				writeVarint(out, index);
+			} catch(IOException e) {
+				failed(e);
+			}
+		}
+	}
+
+	// writes the final state hash and closes the log
+	public synchronized void close(long stateHash) {
+		if(begin(END, lastFrame)) {
+			try {
+				out.writeLong(stateHash);
+				out.close();
+			} catch(IOException e) {
+				failed(e);
+			}
+		}
+		closed = true;
+	}
+
+	private boolean begin(int type, long frame) {
+		if(closed) {
+			return false;
+		}
+
+		try {
+			out.writeByte(type);
+			writeVarint(out, (int) Math.max(0, frame - lastFrame));
+			lastFrame = Math.max(lastFrame, frame);
+			return true;
+		} catch(IOException e) {
+			failed(e);
+			return false;
+		}
+	}
+
+	private void failed(IOException e) {
+		Log.warn("Input log stopped: {}", e);
+		closed = true;
+	}
+
+
+	static void writeVarint(DataOutputStream out, int value) throws IOException {
+		while((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarint(DataInputStream in) throws IOException {
+		int value = 0;
+		for(int shift = 0; ; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+	}
+}
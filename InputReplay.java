@@ -0,0 +1,148 @@
+/** InputReplay
+ *
+ *  Plays an InputLog back against the game logic as fast as possible,
+ *  with no Kinect, no timers and no window.
+ *
+ *  usage: java InputReplay <log file> [expected state hash]
+ *
+ *  Each time a level is finished the game goes on to the level the log
+ *  says the recorded game did, so levels are skipped just as they were,
+ *  however far the background checks have got this time.
+ *
+ *  Prints how long the replay took and the final state hash. If the log
+ *  was closed normally it carries the hash of the recorded game, and the
+ *  two are compared; the exit code is 1 if any expected hash differs.
+ **/
+
+import java.io.*;
+import java.util.function.*;
+
+public class InputReplay {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.out.println("usage: java InputReplay <log file> [expected state hash]");
+			System.exit(2);
+		}
+
+		System.setProperty("java.awt.headless", "true");
+		PrintStream console = System.out;
+
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(args[0])));
+		if(in.readInt() != InputLog.MAGIC || in.readUnsignedByte() != InputLog.VERSION) {
+			console.println(args[0] + " is not an input log");
+			System.exit(2);
+		}
+
+		GameRunner game = new GameRunner(false);
+		checkLevels(in, game.getLevelFiles(), console);
+
+		// read from the log as the game asks, so a level record is always
+		// the one that follows the event that finished the level
+		game.replayLevels(new IntSupplier() {
+			public int getAsInt() {
+				try {
+					int type = in.readUnsignedByte();
+					if(type != InputLog.LEVEL) {
+						throw new IOException("expected a level record, found type " + type);
+					}
+					InputLog.readVarint(in);
+					return InputLog.readVarint(in);
+				} catch(IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		});
+
+		// the game logs every move to the console; keep that out of the timing
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+		GestureName[] gestures = GestureName.values();
+		int events = 0;
+		long frames = 0;
+		long recorded = -1;
+		boolean hasRecorded = false;
+
+		long start = System.nanoTime();
+		try {
+			while(true) {
+				int type = in.readUnsignedByte();
+				frames += InputLog.readVarint(in);
+
+				if(type == InputLog.TICK) {
+					game.actionPerformed(null);
+				} else if(type == InputLog.POSE) {
+					GestureName gest = gestures[in.readUnsignedByte()];
+					boolean isActivated = in.readUnsignedByte() != 0;
+					game.pose(InputLog.readVarint(in), gest, isActivated, null);
+				} else if(type == InputLog.KEY) {
+					game.command(in.readUnsignedByte());
+				} else if(type == InputLog.END) {
+					recorded = in.readLong();
+					hasRecorded = true;
+					break;
+				} else {
+					throw new IOException("unknown record type " + type);
+				}
+				events++;
+			}
+		} catch(EOFException e) {
+			// log was cut off, e.g. the game was killed
+		} catch(UncheckedIOException e) {
+			if(!(e.getCause() instanceof EOFException)) {
+				throw e.getCause();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+
+		System.setOut(console);
+		in.close();
+
+		long hash = game.stateHash();
+		console.println(events + " events over " + frames + " sensor frames, replayed in "
+				+ (elapsed / 1000000.0) + " ms (" + (long) (events / (elapsed / 1e9)) + " events/s)");
+		console.println("final state hash " + Long.toHexString(hash));
+
+		boolean ok = true;
+		if(hasRecorded) {
+			ok &= compare("recorded", recorded, hash, console);
+		}
+		if(args.length > 1) {
+			ok &= compare("expected", Long.parseLong(args[1], 16), hash, console);
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	// warn if the levels on disk are not the ones that were recorded
+	private static void checkLevels(DataInputStream in, File[] files, PrintStream console)
+			throws IOException {
+		int count = InputLog.readVarint(in);
+		if(count != files.length) {
+			console.println("warning: log has " + count + " levels, found " + files.length);
+		}
+
+		for(int i=0; i<count; i++) {
+			String name = in.readUTF();
+			String hash = in.readUTF();
+			if(i >= files.length) {
+				continue;
+			}
+
+			if(!name.equals(files[i].getName())) {
+				console.println("warning: level " + i + " was " + name + ", now " + files[i].getName());
+			} else if(!hash.equals(LevelValidator.contentHash(files[i]))) {
+				console.println("warning: " + name + " has changed since the recording");
+			}
+		}
+	}
+
+	private static boolean compare(String what, long wanted, long hash, PrintStream console) {
+		if(wanted == hash) {
+			console.println("matches " + what + " state hash");
+			return true;
+		}
+		console.println("DIFFERS from " + what + " state hash " + Long.toHexString(wanted));
+		return false;
+	}
+}
@@ -0,0 +1,117 @@
+/** LatencyHistogram
+ *
+ *  Counts durations in fixed buckets, four per power of two of
+ *  microseconds, so any recorded value is known to within 25%.
+ *
+ *  Recording is lock-free and allocation-free, so it can be called from
+ *  the sensor thread and the EDT at once. Readers take a snapshot of the
+ *  counts and work out percentiles from it; subtracting an earlier
+ *  snapshot gives the percentiles for just the time in between. The
+ *  number of values and their total are also kept, since the start.
+ **/
+
+import java.util.concurrent.atomic.*;
+
+public class LatencyHistogram {
+	private static final int SUB_BITS = 2;
+	private static final int SUB = 1 << SUB_BITS;
+	static final int BUCKETS = 30 * SUB;   // up to about 18 minutes
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();   // nanoseconds
+
+	public void record(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		counts.incrementAndGet(bucket(micros));
+		count.increment();
+		sum.add(Math.max(0, nanos));
+
+		long m;
+		while(micros > (m = max.get()) && !max.compareAndSet(m, micros)) {
+			// another thread raised it first; try again
+		}
+	}
+
+	// largest value recorded so far, in microseconds
+	public long getMax() {
+		return max.get();
+	}
+
+	// values recorded so far
+	public long getCount() {
+		return count.sum();
+	}
+
+	// total of the values recorded so far, in nanoseconds
+	public long getSum() {
+		return sum.sum();
+	}
+
+	// copies the current counts into snapshot, which must hold BUCKETS
+	public void snapshot(long[] snapshot) {
+		for(int i=0; i<BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+		}
+	}
+
+
+	static int bucket(long micros) {
+		if(micros < SUB) {
+			return (int) micros;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(micros);
+		int index = (exp - SUB_BITS + 1) * SUB + (int) ((micros >> (exp - SUB_BITS)) - SUB);
+		return Math.min(index, BUCKETS - 1);
+	}
+
+	// smallest value, in microseconds, that falls in the bucket after
+	// index; every value in the bucket is below it
+	static long upperBound(int index) {
+		if(index < SUB) {
+			return index + 1;
+		}
+		int exp = index / SUB + SUB_BITS - 1;
+		int sub = index % SUB;
+		return (long) (SUB + sub + 1) << (exp - SUB_BITS);
+	}
+
+	// total of the counts in (now - before), or of now if before is null
+	static long total(long[] now, long[] before) {
+		long n = 0;
+		for(int i=0; i<BUCKETS; i++) {
+			n += now[i] - (before == null ? 0 : before[i]);
+		}
+		return n;
+	}
+
+	// upper bound of the highest non-empty bucket in (now - before)
+	static long highest(long[] now, long[] before) {
+		for(int i=BUCKETS-1; i>=0; i--) {
+			if(now[i] - (before == null ? 0 : before[i]) > 0) {
+				return upperBound(i);
+			}
+		}
+		return 0;
+	}
+
+	// the value, in microseconds, that fraction p of the counts in
+	// (now - before) are below; 0 if there are none
+	static long percentile(long[] now, long[] before, double p) {
+		long n = total(now, before);
+		if(n == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(p * n);
+		long seen = 0;
+		for(int i=0; i<BUCKETS; i++) {
+			seen += now[i] - (before == null ? 0 : before[i]);
+			if(seen >= Math.max(1, rank)) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(BUCKETS - 1);
+	}
+}
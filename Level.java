@@ -6,282 +6,362 @@
 
 import java.io.*;
 import java.awt.*;
+import java.awt.image.*;
 
 public class Level {
+	// tiles are never drawn smaller than this; taller levels scroll
+	static final int TILE_SIZE = 40;
+
+	// tiles of static layer kept beyond each edge of the screen
+	static final int MARGIN = 16;
+
 	int width;
 	int height;
 	
-	int[][] tiles;
+	// rules and board state, kept free of any drawing code
+	Board board;
 	int columns;
 
+	// every move goes through the journal, for undo and restart
+	MoveJournal journal;
+
 	// display parameters
 	int tileSize;
 	int visibleCols;
+	int visibleRows;
 	int offset;
 	
-	// board state
+	// first column and row on screen
 	int scroll = 0;
 	int vScroll = 0;
 
-	// player state
-	int player = 0;
-	int pHeight = 0;
-	boolean carrying = false;
-
-	public Level(File file, int width, int height) {
+	// ground and doors hardly ever change, so they are drawn once into an
+	// image covering the screen plus a margin, and only redrawn when the
+	// view scrolls out of it or invalidate() is called. Only blocks and the
+	// player are drawn every frame.
+	private BufferedImage staticLayer;
+	private int layerCol, layerRow, layerCols, layerRows;
+	private volatile boolean layerStale;
+
+	// screen area changed since GameRunner last asked, or null
+	private Rectangle dirty;
+
+	// what draw() shows, copied by snapshot() while GameRunner holds its
+	// lock so drawing can go on without it: the view, the player, and the
+	// tiles on screen by column. Reused, so taking one allocates nothing.
+	private int shownCol, shownRow;
+	private int shownPlayer, shownHeight;
+	private boolean shownCarrying;
+	private byte[] shownTiles;
+
+	// throws LevelFormatException, with line and column, for a bad file
+	public Level(File file, int width, int height) throws IOException {
 		this.width  = width;
 		this.height = height;
 
-		try {
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-			
-			// count number of lines using technique from:
-			// http://stackoverflow.com/questions/1277880/
-			int lines = 0;
-			while(reader.readLine() != null) lines++;
+		board = CompiledLevel.open(file);
+		columns = board.getColumns();
+		journal = new MoveJournal(board);
 
-			tiles = new int[lines][];
+		// short levels fill the screen as before; anything with more rows
+		// than fit at TILE_SIZE scrolls vertically instead of shrinking
+		tileSize = Math.max(TILE_SIZE, height / board.getRows());
+		visibleCols = (this.width + tileSize-1) / tileSize;
+		visibleRows = (this.height + tileSize-1) / tileSize;
+		offset = visibleCols / 2;
 
-			tileSize = height / lines;
-			visibleCols = this.width / tileSize;
-			offset = visibleCols / 2;
+		setScroll();
+	}
 
-			// read data into each line using technique modified from:
-			// http://stackoverflow.com/questions/5697763/
-			
-			reader = new BufferedReader(new FileReader(file));
-			for(int i=0; i<lines; i++) {
-				String line = reader.readLine();
+	// moves made on this level, less any undone
+	public long getMoves() {
+		return journal.getMove();
+	}
 
-				String[] numstrs = line.split("\\s+"); // split by white space
-				int[] nums = new int[numstrs.length];
+	public Board getBoard() {
+		return board;
+	}
 
-				if(columns == 0) {
-					columns = nums.length;
-				}
+	// the cells changed so far and the player, for HintEngine
+	public MoveJournal.Position getPosition() {
+		return journal.position();
+	}
 
-				for(int j = 0; j < nums.length; j++) {
-					int tile = Integer.parseInt(numstrs[j]);
-					
-					nums[j] = tile;
+	// changes made so far; safe to read from any thread
+	public long getEdits() {
+		return journal.getEdits();
+	}
 
-					if(tile == 7) { // set starting column
-						player = j;
-						setScroll(j);
-					}
-				}
+	// centres the player on screen, stopping at the edges of the level;
+	// the whole screen changes if the view moves
+	private void setScroll() {
+		int oldScroll = scroll, oldVScroll = vScroll;
+		scroll = clamp(board.getPlayer() - offset, columns - visibleCols);
+		vScroll = clamp(board.getHeight()-1 - visibleRows/2, board.getRows() - visibleRows);
 
-				tiles[i] = nums;
-			}
-		} catch(Exception e) {}
+		if(scroll != oldScroll || vScroll != oldVScroll) {
+			markAll();
+		}
+	}
+	private static int clamp(int value, int max) {
+		return Math.max(0, Math.min(value, max));
 	}
 
-	// calculates number of columns to offset display
-	private void setScroll(int coord) {
-		if(coord < offset) {
-			scroll = 0;
-		} else if(coord > columns-offset) {
-			scroll = columns - offset*2;
-		} else {
-			scroll = coord - offset;
+	// tiles drawn in the static layer
+	private static boolean isStatic(int tile) {
+		return tile == Board.GROUND || tile == Board.DOOR;
+	}
+
+	// copies what is on screen for the next draw(); costs the same
+	// however large the level is
+	public void snapshot() {
+		shownCol = scroll;
+		shownRow = vScroll;
+		shownPlayer = board.getPlayer();
+		shownHeight = board.getHeight();
+		shownCarrying = board.isCarrying();
+
+		if(shownTiles == null) {
+			shownTiles = new byte[visibleCols * visibleRows];
+		}
+		int lastCol = Math.min(columns, scroll + visibleCols);
+		int lastRow = Math.min(board.getRows(), vScroll + visibleRows);
+		for(int j=scroll; j < lastCol; j++) {
+			for(int i=vScroll; i < lastRow; i++) {
+				shownTiles[(j - scroll) * visibleRows + i - vScroll] = (byte) board.tile(i, j);
+			}
 		}
 	}
 
-	// calculates lowest non-empty tile in a column
-	private int lowestObstacle(int col) {
-		for(int i=0; i<tiles.length; i++) {
-			int el = tiles[i][col];
-			if(el != 0 && el != 1 && el != 7) {
-				return i;
+	// draws the level as it was at the last snapshot()
+	public void draw(Graphics2D g2d) {
+		TileSprites sprites = TileSprites.forSize(tileSize);
+		int scroll = shownCol, vScroll = shownRow;
+
+		// only the visible window is drawn, so drawing costs the same
+		// however large the level is
+		int lastCol = Math.min(columns, scroll + visibleCols);
+		int lastRow = Math.min(board.getRows(), vScroll + visibleRows);
+
+		if(layerStale || staticLayer == null || scroll < layerCol || lastCol > layerCol + layerCols
+				|| vScroll < layerRow || lastRow > layerRow + layerRows) {
+			layerStale = false;   // before drawing, so a change meanwhile isn't lost
+			drawStaticLayer(sprites, scroll, vScroll);
+		}
+		g2d.drawImage(staticLayer, (layerCol - scroll) * tileSize,
+						(layerRow - vScroll) * tileSize, null);
+
+		// blocks only need drawing where the panel is being repainted
+		int fromCol = scroll, fromRow = vScroll;
+		int toCol = lastCol, toRow = lastRow;
+		Rectangle clip = g2d.getClipBounds();
+		if(clip != null) {
+			fromCol = Math.max(fromCol, scroll + clip.x / tileSize);
+			fromRow = Math.max(fromRow, vScroll + clip.y / tileSize);
+			toCol = Math.min(toCol, scroll + (clip.x + clip.width + tileSize-1) / tileSize);
+			toRow = Math.min(toRow, vScroll + (clip.y + clip.height + tileSize-1) / tileSize);
+		}
+
+		for(int j=fromCol; j < toCol; j++) {
+			for(int i=fromRow; i < toRow; i++) {
+				if(shownTiles[(j - scroll) * visibleRows + i - vScroll] == Board.BLOCK) {
+					sprites.drawTile(g2d, Board.BLOCK, (j - scroll) * tileSize,
+										(i - vScroll) * tileSize);
+				}
 			}
 		}
 
-		return tiles.length;
+		drawPlayer(g2d, sprites, scroll, vScroll);
 	}
-	private void setPlayerHeight() {
-		pHeight = lowestObstacle(player);
+
+	// has the static layer drawn again at the next draw(), for a change to
+	// the ground or doors; safe to call from any thread
+	public void invalidate() {
+		layerStale = true;
 	}
 
-	public void draw(Graphics2D g2d) {
-		for(int i=0; i<tiles.length; i++) {
-			// only iterate over visible columns
-			for(int j=scroll; j < scroll + visibleCols; j++) {
-				int tile = tiles[i][j];
-				
-				int offsetX = (j - scroll) * tileSize,
-					offsetY = i * tileSize;
-
-				switch(tile) {
-					case 0: // AIR
-						break;
-					case 1: // DOOR
-						g2d.setPaint(Color.RED);
-						g2d.fillRect(offsetX, offsetY, tileSize, tileSize);
-						
-						break;
-					case 3: // MOVABLE BLOCK
-						drawBlock(g2d, offsetX, offsetY);						
-						break;
-					case 7: // INITIAL PLAYER
-						break;
-					case 8: // GROUND
-						g2d.setPaint(Color.WHITE);
-						g2d.fillRect(offsetX, offsetY, tileSize, tileSize);
-						
-						g2d.setPaint(Color.BLACK);
-						g2d.setStroke(new BasicStroke(2));
-						g2d.drawRect(offsetX, offsetY, tileSize, tileSize);
-
-						break;
-					default:
-						break;
+	// draws the ground and doors around the current view
+	private void drawStaticLayer(TileSprites sprites, int scroll, int vScroll) {
+		int rows = board.getRows();
+		layerCol = clamp(scroll - MARGIN, columns - visibleCols - 2*MARGIN);
+		layerRow = clamp(vScroll - MARGIN, rows - visibleRows - 2*MARGIN);
+		layerCols = Math.min(columns - layerCol, visibleCols + 2*MARGIN);
+		layerRows = Math.min(rows - layerRow, visibleRows + 2*MARGIN);
+
+		if(staticLayer == null || staticLayer.getWidth() != layerCols * tileSize
+				|| staticLayer.getHeight() != layerRows * tileSize) {
+			staticLayer = TileSprites.createImage(layerCols * tileSize,
+							layerRows * tileSize, Transparency.OPAQUE);
+		}
+
+		Graphics2D g2d = staticLayer.createGraphics();
+		g2d.setPaint(Color.BLACK);
+		g2d.fillRect(0, 0, staticLayer.getWidth(), staticLayer.getHeight());
+
+		for(int j=0; j < layerCols; j++) {
+			for(int i=0; i < layerRows; i++) {
+				int tile = board.tile(layerRow + i, layerCol + j);
+				if(isStatic(tile)) {
+					sprites.drawTile(g2d, tile, j * tileSize, i * tileSize);
 				}
 			}
 		}
-
-		drawPlayer(g2d);
+		g2d.dispose();
 	}
 
 	// draw player image at correct screen position
-	private void drawPlayer(Graphics2D g2d) {
-		setPlayerHeight();
+	private void drawPlayer(Graphics2D g2d, TileSprites sprites, int scroll, int vScroll) {
+		int offsetX = (shownPlayer - scroll) * tileSize,
+			offsetY = (shownHeight - vScroll) * tileSize - tileSize*2;
 
-		int offsetX = (player - scroll) * tileSize,
-			offsetY = pHeight * tileSize - tileSize*2;
+		sprites.drawPlayer(g2d, offsetX, offsetY);
+
+		if(shownCarrying) {
+			sprites.drawTile(g2d, Board.BLOCK, offsetX, offsetY - tileSize);
+		}
+	}
 
-		g2d.setPaint(Color.BLUE);
-		g2d.fillRect(offsetX, offsetY, tileSize, tileSize*2);
+	// the part of the screen changed since the last call, or null if
+	// nothing has; GameRunner repaints just that
+	public Rectangle takeDirty() {
+		Rectangle area = dirty;
+		dirty = null;
+		return area;
+	}
 
-		if(carrying) {
-			drawBlock(g2d, offsetX, offsetY - tileSize);
+	private void mark(Rectangle area) {
+		if(dirty == null) {
+			dirty = area;
+		} else {
+			dirty.add(area);
 		}
 	}
+	private void markAll() {
+		dirty = new Rectangle(0, 0, width, height);
+	}
 
-	// draw movable block
-	private void drawBlock(Graphics2D g2d, int offsetX, int offsetY) {
-		g2d.setPaint(Color.GRAY);
-		g2d.fillRoundRect(offsetX, offsetY, tileSize, tileSize, 20, 20);
+	// the player, with room for a carried block above
+	private Rectangle playerArea() {
+		return new Rectangle((board.getPlayer() - scroll) * tileSize,
+				(board.getHeight() - vScroll - 3) * tileSize, tileSize, tileSize*3);
+	}
 
-		g2d.setPaint(Color.BLACK);
-		
-		g2d.setStroke(new BasicStroke(3));
-		g2d.drawRoundRect(offsetX, offsetY, tileSize, tileSize, 20, 20);
+	// applies an action through the journal, marking the player's old and
+	// new cells and any block lifted or placed
+	private boolean act(int action) {
+		Rectangle before = playerArea();
+		if(!journal.step(action)) {
+			return false;
+		}
 
-		g2d.setStroke(new BasicStroke(2));
-		g2d.drawRoundRect(offsetX+10, offsetY+10, tileSize-20, tileSize-20, 10, 10);
+		mark(before);
+		mark(playerArea());
+		int changed = board.lastChanged();
+		if(changed >= 0) {
+			int rows = board.getRows();
+			mark(new Rectangle((changed / rows - scroll) * tileSize,
+					(changed % rows - vScroll) * tileSize, tileSize, tileSize));
+
+			// a block put down in a doorway covers the door for good
+			if(isStatic(board.lastReplaced()) || isStatic(board.cells[changed])) {
+				invalidate();
+			}
+		}
+
+		setScroll();
+		return true;
 	}
 
 	// movement methods called by GameRunner when it gets skeleton position
 	public void moveRight() {
-		if(player < columns-1) {
-			// check if player is able to move right one space
-			// by hypothetically moving player, then resetting if wrong
-
-			int prevHeight = pHeight;
-			
-			player++;
-			setPlayerHeight();
-			
-			// if there's a wall at new position, player will jump
-			if(prevHeight - pHeight > 1) {
-				System.out.println("Can't go there, would jump up "+(pHeight-prevHeight));
-				pHeight = prevHeight;
-				player--; // reset
-			}
-
-			setScroll(player);
-		}
-		
-		checkWin();
+		move(Board.RIGHT, 1);
 	}
 	public void moveLeft() {
-		if(player > 1) {
-			// check if player is able to move left one space
-			// by hypothetically moving player, then resetting if wrong
-
-			int prevHeight = pHeight;
-			
-			player--;
-			setPlayerHeight();
-			
-			// if there's a wall at new position, player will jump
-			if(prevHeight - pHeight > 1) {
-				System.out.println("Can't go there, would jump up "+(pHeight-prevHeight));
-				pHeight = prevHeight;
-				player++; // reset
+		move(Board.LEFT, -1);
+	}
+	private void move(int action, int dir) {
+		int player = board.getPlayer();
+		if(!act(action) && player+dir > 0 && player+dir < columns) {
+			int jump = board.getHeight() - board.lowestObstacle(player+dir);
+			if(jump > 1) {
+				Log.debug("Can't go there, would jump up {}", jump);
 			}
-
-			setScroll(player);
 		}
-		
-		checkWin();
 	}
 
 	// game actions called by GameRunner when lifting/placing blocks
 	//
 	// lifting: can only lift blocks directly next to player
 	public void liftBlockRight() {
-		System.out.println("Lifting right block");
-
-		if(!carrying && player < columns-1) {
-			if(tiles[pHeight-2][player+1] == 3) {
-				// found a movable block
-				tiles[pHeight-2][player+1] = 0;
-				carrying = true;
-			} else if(tiles[pHeight-1][player+1] == 3) {
-				// found a movable block
-				tiles[pHeight-1][player+1] = 0;
-				carrying = true;
-			}
-		}
+		Log.debug("Lifting right block");
+		act(Board.LIFT_RIGHT);
 	}
 	public void liftBlockLeft() {
-		System.out.println("Lifting left block");
-		
-		if(!carrying && player > 1) {
-			if(tiles[pHeight-2][player-1] == 3) {
-				// found a movable block
-				tiles[pHeight-2][player-1] = 0;
-				carrying = true;
-			} else if(tiles[pHeight-1][player-1] == 3) {
-				// found a movable block
-				tiles[pHeight-1][player-1] = 0;
-				carrying = true;
-			}
-		}
+		Log.debug("Lifting left block");
+		act(Board.LIFT_LEFT);
 	}
 
 	// placing: can only place if the floor is low enough
 	public void placeBlockRight() {
-		System.out.println("Placing right block");
-		
-		if(carrying && player < columns-1) {
-			int ground = lowestObstacle(player+1);
-			
-			// block always goes to lowest possible spot
-			if(ground > pHeight-1) {
-				tiles[ground-1][player+1] = 3;
-				carrying = false;
-			}
-		}
+		Log.debug("Placing right block");
+		act(Board.PLACE_RIGHT);
 	}
 	public void placeBlockLeft() {
-		System.out.println("Placing left block");
-
-		if(carrying && player > 1) {
-			int ground = lowestObstacle(player-1);
-			
-			// block always goes to lowest possible spot
-			if(ground > pHeight-1) {
-				tiles[ground-1][player-1] = 3;
-				carrying = false;
-			}
+		Log.debug("Placing left block");
+		act(Board.PLACE_LEFT);
+	}
+
+
+	// after the level file was edited: stand where the player stood in the
+	// old version, if that is still possible. Restart still goes back to
+	// the start tile.
+	public boolean keepPlayer(Level old) {
+		Board from = old.getBoard();
+		if(!board.placePlayer(from.getPlayer(), from.isCarrying())) {
+			return false;
 		}
+
+		setScroll();
+		markAll();
+		return true;
+	}
+
+
+	// undo, redo and restart only touch the cells that changed; they are
+	// rare enough to repaint the whole screen, and to draw the static
+	// layer again in case they brought back a covered door
+	public boolean undo() {
+		boolean undone = journal.undo();
+		setScroll();
+		markAll();
+		invalidate();
+		return undone;
+	}
+	public boolean redo() {
+		boolean redone = journal.redo();
+		setScroll();
+		markAll();
+		invalidate();
+		return redone;
+	}
+	public void restart() {
+		journal.restart();
+		setScroll();
+		markAll();
+		invalidate();
+	}
+
+	// scrub through the session by a number of moves (negative for back)
+	public void rewind(int moves) {
+		journal.seek(journal.getMove() + moves);
+		setScroll();
+		markAll();
+		invalidate();
 	}
 
 
 	// is the player on a door?
 	public boolean checkWin() {
-		return (tiles[pHeight-1][player] == 1 || tiles[pHeight-2][player] == 1);
+		return board.isWon();
 	}
 }
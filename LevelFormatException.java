@@ -0,0 +1,28 @@
+/** LevelFormatException
+ *
+ *  Thrown by LevelParser for a malformed .lvl file, with the line and
+ *  column where the problem was found
+ **/
+
+import java.io.*;
+
+public class LevelFormatException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int line;
+	private final int column;
+
+	public LevelFormatException(File file, int line, int column, String message) {
+		super(file.getPath() + ":" + line + ":" + column + ": " + message);
+		this.line = line;
+		this.column = column;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	public int getColumn() {
+		return column;
+	}
+}
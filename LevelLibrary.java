@@ -0,0 +1,240 @@
+/** LevelLibrary
+ *
+ *  The levels in a directory, loaded only when needed.
+ *
+ *  Levels are ordered by name, comparing runs of digits as numbers so that
+ *  2.lvl comes before 10.lvl. Asking for a level also starts loading the
+ *  next couple on a background thread, and a handful of recent levels are
+ *  kept in a small LRU cache, so memory does not grow with the pack size.
+ *
+ *  Levels are cached by file rather than by position, so files can be
+ *  reloaded or added while the game runs (see LevelWatcher).
+ **/
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LevelLibrary {
+	private static final int PREFETCH = 2;
+	private static final int CACHE_SIZE = 4;
+
+	// replaced as a whole when files are added, never changed in place
+	private volatile File[] files;
+	private int width;
+	private int height;
+
+	// loaded levels, least recently used first
+	private LinkedHashMap<File, Level> cache =
+		new LinkedHashMap<File, Level>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<File, Level> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		};
+
+	private HashMap<File, Future<Level>> loading = new HashMap<File, Future<Level>>();
+	private ExecutorService loader;
+
+
+	public LevelLibrary(File dir, int width, int height) {
+		this.width  = width;
+		this.height = height;
+
+		files = dir.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".lvl");
+			}
+		});
+		if(files == null) {
+			files = new File[0];
+		}
+		sort(files);
+
+		loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "level-loader");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	public int size() {
+		return files.length;
+	}
+
+	public File file(int i) {
+		return files[i];
+	}
+
+	public File[] files() {
+		return files.clone();
+	}
+
+	// position of a file in the current order, or -1
+	public int indexOf(File file) {
+		File[] current = files;
+		for(int i=0; i<current.length; i++) {
+			if(current[i].equals(file)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// adds a new level file in its place in the order; returns false if
+	// it was already known
+	public boolean add(File file) {
+		synchronized(this) {
+			if(indexOf(file) >= 0) {
+				return false;
+			}
+
+			File[] bigger = Arrays.copyOf(files, files.length + 1);
+			bigger[files.length] = file;
+			sort(bigger);
+			files = bigger;
+			return true;
+		}
+	}
+
+	// parses a changed file again, on the calling thread, and replaces any
+	// cached copy. Returns the new level, or null if it no longer loads.
+	public Level reload(File file) {
+		Level level = load(file);
+
+		synchronized(this) {
+			if(level != null) {
+				cache.put(file, level);
+			} else {
+				cache.remove(file);
+			}
+		}
+		return level;
+	}
+
+	// the level at index i, waiting for it to load if necessary; null if
+	// it could not be loaded. Starts loading the levels that follow it.
+	// The game checks isLoaded() first and, on a miss, calls this from
+	// later() instead, so the sensor thread never waits on a load.
+	public Level get(int i) {
+		File file = files[i];
+		Future<Level> pending;
+		synchronized(this) {
+			Level level = cache.get(file);
+			if(level != null) {
+				prefetchAfter(i);
+				return level;
+			}
+			pending = loading.get(file);
+		}
+
+		// a prefetch that hasn't started is loaded here instead: waiting
+		// for it on the loader thread itself would never end
+		Level level = null;
+		if(pending != null && !pending.cancel(false)) {
+			try {
+				level = pending.get();
+			} catch(Exception e) {}
+		} else {
+			level = load(file);
+		}
+
+		synchronized(this) {
+			if(pending != null) {
+				loading.remove(file, pending);
+			}
+			if(level != null) {
+				cache.put(file, level);
+			}
+			prefetchAfter(i);
+		}
+		return level;
+	}
+
+	// whether get(i) would return straight away, without loading
+	public synchronized boolean isLoaded(int i) {
+		return cache.containsKey(files[i]);
+	}
+
+	// runs a task on the loader thread, after the loads already asked for
+	public void later(Runnable task) {
+		loader.execute(task);
+	}
+
+	// called with the library locked
+	private void prefetchAfter(int i) {
+		File[] current = files;
+		for(int next = i+1; next <= i+PREFETCH && next < current.length; next++) {
+			final File file = current[next];
+			if(cache.containsKey(file) || loading.containsKey(file)) {
+				continue;
+			}
+
+			loading.put(file, loader.submit(new Callable<Level>() {
+				public Level call() {
+					Level level = load(file);
+					synchronized(LevelLibrary.this) {
+						loading.remove(file);
+						if(level != null) {
+							cache.put(file, level);
+						}
+					}
+					return level;
+				}
+			}));
+		}
+	}
+
+	private Level load(File file) {
+		try {
+			return new Level(file, width, height);
+		} catch(IOException e) {
+			Log.warn("Unable to load level: {}", e.getMessage());
+			return null;
+		}
+	}
+
+
+	private static void sort(File[] files) {
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				return compareNames(a.getName(), b.getName());
+			}
+		});
+	}
+
+	// compares names piece by piece, with runs of digits compared as numbers
+	static int compareNames(String a, String b) {
+		int i = 0, j = 0;
+		while(i < a.length() && j < b.length()) {
+			char ca = a.charAt(i), cb = b.charAt(j);
+
+			if(Character.isDigit(ca) && Character.isDigit(cb)) {
+				int si = i, sj = j;
+				while(i < a.length() && Character.isDigit(a.charAt(i))) i++;
+				while(j < b.length() && Character.isDigit(b.charAt(j))) j++;
+
+				// compare by length once leading zeros are gone, then digits
+				String na = a.substring(si, i).replaceFirst("^0+(?=.)", "");
+				String nb = b.substring(sj, j).replaceFirst("^0+(?=.)", "");
+				if(na.length() != nb.length()) {
+					return na.length() - nb.length();
+				}
+				int c = na.compareTo(nb);
+				if(c != 0) {
+					return c;
+				}
+			} else {
+				if(ca != cb) {
+					return ca - cb;
+				}
+				i++;
+				j++;
+			}
+		}
+
+		return (a.length() - i) - (b.length() - j);
+	}
+}
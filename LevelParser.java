@@ -0,0 +1,164 @@
+/** LevelParser
+ *
+ *  Reads a .lvl file into a Board in a single pass over its bytes.
+ *
+ *  Tiles are numbers separated by spaces or tabs, one row per line; blank
+ *  lines are ignored. Every row must be as wide as the first, every tile
+ *  must be a known tile code, and there must be exactly one start tile.
+ *  Problems are reported as a LevelFormatException with line and column.
+ **/
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+public class LevelParser {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+
+	// tiles read so far, row by row
+	private byte[] tiles = new byte[1024];
+	private int count = 0;
+
+	private int rows = 0;
+	private int columns = -1;    // width of the first row
+	private int rowWidth = 0;    // tiles in the row being read
+
+	private int startCol = -1;
+
+	// number being read, and where it began
+	private int value = -1;
+	private int valueLine, valueCol;
+
+	// position in the file, for error messages
+	private int line = 1;
+	private int col = 0;
+
+	private LevelParser(File file) {
+		this.file = file;
+	}
+
+	public static Board parse(File file) throws IOException {
+		return new LevelParser(file).read();
+	}
+
+
+	private Board read() throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			byte[] bytes = buf.array();
+
+			int n;
+			while((n = channel.read(buf)) != -1) {
+				for(int i=0; i<n; i++) {
+					scan(bytes[i]);
+				}
+				buf.clear();
+			}
+		} finally {
+			in.close();
+		}
+
+		// last line may not end with a newline
+		endRow();
+
+		if(rows == 0) {
+			throw error(line, 1, "level is empty");
+		}
+		if(startCol < 0) {
+			throw error(line, 1, "no start position (7)");
+		}
+
+		return new Board(rows, columns, transpose(), startCol);
+	}
+
+	private void scan(byte b) throws LevelFormatException {
+		col++;
+
+		if(b >= '0' && b <= '9') {
+			if(value < 0) {
+				value = 0;
+				valueLine = line;
+				valueCol = col;
+			}
+			value = value*10 + (b - '0');
+			if(value > 255) {
+				throw error(valueLine, valueCol, "number too large for a tile");
+			}
+		} else if(b == ' ' || b == '\t' || b == '\r') {
+			endTile();
+		} else if(b == '\n') {
+			endRow();
+			line++;
+			col = 0;
+		} else {
+			throw error(line, col, "unexpected character '" + (char) (b & 0xff) + "'");
+		}
+	}
+
+	private void endTile() throws LevelFormatException {
+		if(value < 0) {
+			return;
+		}
+
+		switch(value) {
+			case Board.AIR:
+			case Board.DOOR:
+			case Board.BLOCK:
+			case Board.GROUND:
+				break;
+			case Board.START:
+				if(startCol >= 0) {
+					throw error(valueLine, valueCol, "second start position");
+				}
+				startCol = rowWidth;
+				break;
+			default:
+				throw error(valueLine, valueCol, "unknown tile " + value);
+		}
+
+		if(count == tiles.length) {
+			byte[] bigger = new byte[tiles.length * 2];
+			System.arraycopy(tiles, 0, bigger, 0, count);
+			tiles = bigger;
+		}
+		tiles[count++] = (byte) value;
+		rowWidth++;
+		value = -1;
+	}
+
+	private void endRow() throws LevelFormatException {
+		endTile();
+		if(rowWidth == 0) {
+			return;   // blank line
+		}
+
+		if(columns < 0) {
+			columns = rowWidth;
+		} else if(rowWidth != columns) {
+			throw error(line, col, "row has " + rowWidth + " tiles, expected " + columns);
+		}
+
+		rows++;
+		rowWidth = 0;
+	}
+
+	// the file is read row by row, but Board keeps tiles column by column
+	private byte[] transpose() {
+		byte[] cells = new byte[rows * columns];
+		for(int i=0; i<rows; i++) {
+			int from = i*columns;
+			for(int j=0; j<columns; j++) {
+				cells[j*rows + i] = tiles[from + j];
+			}
+		}
+		return cells;
+	}
+
+	private LevelFormatException error(int line, int column, String message) {
+		return new LevelFormatException(file, line, column, message);
+	}
+}
@@ -0,0 +1,230 @@
+/** LevelSolver
+ *
+ *  Breadth-first search over the states of a level, used to check that
+ *  a level can be beaten and to find the fewest moves needed to do it
+ **/
+
+import java.lang.management.*;
+import java.util.*;
+
+
+// every action the player can take; ordinals match the Board action codes
+enum Move {
+	LEFT, RIGHT, LIFT_LEFT, LIFT_RIGHT, PLACE_LEFT, PLACE_RIGHT;
+
+	boolean apply(Board board) {
+		return board.step(ordinal());
+	}
+}
+
+
+public class LevelSolver {
+	// result codes used in place of a move count
+	public static final int UNSOLVABLE = -1;
+	public static final int UNKNOWN = -2;   // gave up before the search finished
+
+	public static final int DEFAULT_MAX_STATES = 100000;
+
+	private static final Move[] MOVES = Move.values();
+
+	// marks a door's cell in a state key, as against a block's
+	private static final int DOOR_CELL = 0x80000000;
+
+	public static class Result {
+		public final int moves;
+		public final List<Move> path;
+
+		Result(int moves, List<Move> path) {
+			this.moves = moves;
+			this.path = path;
+		}
+
+		public boolean isSolved() {
+			return moves >= 0;
+		}
+	}
+
+	// how a state was first reached, for walking the path back to the start
+	private static class Step {
+		final String parent;
+		final Move move;
+
+		Step(String parent, Move move) {
+			this.parent = parent;
+			this.move = move;
+		}
+	}
+
+
+	public static Result solve(Board start, int maxStates) {
+		return solve(start, maxStates, 0, 0);
+	}
+
+	// anytime version: stops when out of wall-clock or CPU time (in ns,
+	// 0 for no limit) and returns the path to the state that got closest
+	// to a door, marked as UNKNOWN
+	public static Result solve(Board start, int maxStates, long maxNanos, long maxCpuNanos) {
+		Board base = new Board(start);
+
+		String startKey = encode(base);
+		if(base.isWon()) {
+			return new Result(0, new ArrayList<Move>());
+		}
+
+		long deadline = System.nanoTime() + maxNanos;
+		long cpuDeadline = maxCpuNanos > 0 ? cpuTime() + maxCpuNanos : 0;
+		int[] doors = doorColumns(base);
+
+		HashMap<String, Step> seen = new HashMap<String, Step>();
+		ArrayDeque<String> queue = new ArrayDeque<String>();
+		seen.put(startKey, new Step(null, null));
+		queue.add(startKey);
+
+		String bestKey = startKey;
+		int bestDist = doorDistance(base, doors);
+
+		Board current = new Board(base);
+		int expanded = 0;
+		while(!queue.isEmpty()) {
+			// checking the clocks is cheap, but not free
+			if((++expanded & 63) == 0 && outOfTime(maxNanos, deadline, cpuDeadline)) {
+				return new Result(UNKNOWN, buildPath(seen, bestKey));
+			}
+
+			String key = queue.poll();
+			decode(key, base, current);
+
+			for(Move move : MOVES) {
+				Board next = new Board(current);
+				if(!move.apply(next)) {
+					continue;
+				}
+
+				String nextKey = encode(next);
+				if(seen.containsKey(nextKey)) {
+					continue;
+				}
+				seen.put(nextKey, new Step(key, move));
+
+				if(next.isWon()) {
+					List<Move> path = buildPath(seen, nextKey);
+					return new Result(path.size(), path);
+				}
+
+				int dist = doorDistance(next, doors);
+				if(dist < bestDist) {
+					bestDist = dist;
+					bestKey = nextKey;
+				}
+
+				if(seen.size() >= maxStates) {
+					return new Result(UNKNOWN, buildPath(seen, bestKey));
+				}
+				queue.add(nextKey);
+			}
+		}
+
+		return new Result(UNSOLVABLE, null);
+	}
+
+	private static List<Move> buildPath(HashMap<String, Step> seen, String key) {
+		LinkedList<Move> path = new LinkedList<Move>();
+		Step step = seen.get(key);
+		while(step.move != null) {
+			path.addFirst(step.move);
+			step = seen.get(step.parent);
+		}
+		return new ArrayList<Move>(path);
+	}
+
+
+	private static boolean outOfTime(long maxNanos, long deadline, long cpuDeadline) {
+		if(maxNanos > 0 && System.nanoTime() > deadline) {
+			return true;
+		}
+		return cpuDeadline > 0 && cpuTime() > cpuDeadline;
+	}
+
+	private static long cpuTime() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		return bean.isCurrentThreadCpuTimeSupported()
+					? bean.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	private static int[] doorColumns(Board board) {
+		int[] cols = new int[0];
+		for(int j=0; j<board.columns; j++) {
+			for(int i=0; i<board.rows; i++) {
+				if(board.tile(i, j) == Board.DOOR) {
+					cols = Arrays.copyOf(cols, cols.length+1);
+					cols[cols.length-1] = j;
+					break;
+				}
+			}
+		}
+		return cols;
+	}
+
+	// columns between the player and the nearest door
+	private static int doorDistance(Board board, int[] doors) {
+		int best = Integer.MAX_VALUE;
+		for(int col : doors) {
+			best = Math.min(best, Math.abs(col - board.getPlayer()));
+		}
+		return best;
+	}
+
+
+	// a state is the player column, whether a block is carried, and the
+	// positions of all movable blocks and of the doors still standing; a
+	// block placed on a door and lifted again leaves air, so doors change
+	// too. Everything else never changes.
+	static String encode(Board board) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(board.isCarrying() ? '1' : '0');
+		appendInt(sb, board.getPlayer());
+
+		byte[] cells = board.cells();
+		for(int k=0; k<cells.length; k++) {
+			if(cells[k] == Board.BLOCK) {
+				appendInt(sb, k);
+			} else if(cells[k] == Board.DOOR) {
+				appendInt(sb, k | DOOR_CELL);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	// two chars per value, so large boards don't overflow a single char
+	private static void appendInt(StringBuilder sb, int value) {
+		sb.append((char) (value >>> 16));
+		sb.append((char) value);
+	}
+	private static int readInt(String key, int at) {
+		return (key.charAt(at) << 16) | key.charAt(at+1);
+	}
+
+	// rebuild a state on top of the base board's fixed tiles
+	private static void decode(String key, Board base, Board into) {
+		byte[] src = base.cells();
+		byte[] dst = into.cells();
+		for(int k=0; k<src.length; k++) {
+			byte tile = src[k];
+			dst[k] = (tile == Board.BLOCK || tile == Board.START || tile == Board.DOOR) ? Board.AIR : tile;
+		}
+
+		into.state[Board.CARRYING] = key.charAt(0) == '1' ? 1 : 0;
+		into.state[Board.PLAYER] = readInt(key, 1);
+		for(int k=3; k<key.length(); k+=2) {
+			int cell = readInt(key, k);
+			if((cell & DOOR_CELL) != 0) {
+				dst[cell & ~DOOR_CELL] = Board.DOOR;
+			} else {
+				dst[cell] = Board.BLOCK;
+			}
+		}
+
+		into.state[Board.HEIGHT] = into.lowestObstacle(into.state[Board.PLAYER]);
+	}
+}
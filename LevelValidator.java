@@ -0,0 +1,230 @@
+/** LevelValidator
+ *
+ *  Checks every level on a background pool when the game starts, so that
+ *  broken or unsolvable levels are found before a player reaches them.
+ *
+ *  Results are kept in a cache file keyed by a hash of each level's
+ *  contents, so a level is only solved again after it has been edited.
+ *  Only the solver's answers are cached: a level that failed to load or
+ *  search (a half-written file, running out of memory) is tried again a
+ *  few times, and again at the next start if it still fails.
+ *
+ *  A level that can be beaten in fewer than -Dblockdude.level.minMoves
+ *  moves (3) is too trivial to show, and is skipped like an unsolvable
+ *  one.
+ **/
+
+import java.io.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class LevelValidator {
+	// for levels that threw while being loaded or searched; never cached
+	public static final int BROKEN = -3;
+
+	private static final int MIN_MOVES = Integer.getInteger("blockdude.level.minMoves", 3);
+	private static final int ATTEMPTS = 3;              // tries before a level is left broken
+	private static final long RETRY_MS = 2000;          // before the first retry; doubles
+
+	private File cacheFile;
+	private Properties cache = new Properties();
+
+	// finished results, by level file
+	private ConcurrentHashMap<File, Integer> results = new ConcurrentHashMap<File, Integer>();
+
+	private ScheduledExecutorService pool;
+	private int width;
+	private int height;
+
+	public LevelValidator(File cacheFile, int width, int height) {
+		this.cacheFile = cacheFile;
+		this.width  = width;
+		this.height = height;
+
+		loadCache();
+
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		pool = Executors.newScheduledThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "level-validator");
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+	}
+
+	// queue every file for checking; returns straight away
+	public void validate(File[] files) {
+		for(File file : files) {
+			schedule(file, 1, 0);
+		}
+	}
+
+	private void schedule(final File file, final int attempt, long delayMs) {
+		pool.schedule(new Runnable() {
+			public void run() {
+				check(file, attempt);
+			}
+		}, delayMs, TimeUnit.MILLISECONDS);
+	}
+
+	// checks a file again after it was edited; until then it is treated
+	// as playable
+	public void revalidate(File file) {
+		results.remove(file);
+		validate(new File[] { file });
+	}
+
+	// true only once a level is known to be impossible, too easy, or
+	// broken after every retry
+	public boolean isUnplayable(File file) {
+		Integer moves = results.get(file);
+		return moves != null && (moves == LevelSolver.UNSOLVABLE || moves == BROKEN
+									|| (moves >= 0 && moves < MIN_MOVES));
+	}
+
+	// fewest moves to beat a level, or null if it hasn't been checked yet
+	public Integer minMoves(File file) {
+		return results.get(file);
+	}
+
+	public void shutdown() {
+		pool.shutdownNow();
+	}
+
+
+	private void check(File file, int attempt) {
+		int moves;
+		String hash;
+		try {
+			hash = contentHash(file);
+
+			String cached;
+			synchronized(cache) {
+				cached = cache.getProperty(hash);
+			}
+
+			moves = cachedMoves(cached);
+			if(moves == BROKEN) {
+				Level level = new Level(file, width, height);
+				moves = LevelSolver.solve(level.getBoard(), LevelSolver.DEFAULT_MAX_STATES).moves;
+			}
+		} catch(Throwable e) {   // OutOfMemoryError included
+			if(attempt < ATTEMPTS) {
+				Log.info("Level {} could not be checked, trying again: {}", file.getName(), e);
+				schedule(file, attempt + 1, RETRY_MS << (attempt - 1));
+				return;
+			}
+			results.put(file, BROKEN);
+			report(file, BROKEN);
+			return;
+		}
+
+		results.put(file, moves);
+		report(file, moves);
+
+		synchronized(cache) {
+			if(!Integer.toString(moves).equals(cache.getProperty(hash))) {
+				cache.setProperty(hash, Integer.toString(moves));
+				saveCache();
+			}
+		}
+	}
+
+	// a cached result, or BROKEN if there is none to trust; caches written
+	// before BROKEN stopped being stored may hold it
+	private static int cachedMoves(String cached) {
+		if(cached == null) {
+			return BROKEN;
+		}
+		try {
+			return Integer.parseInt(cached);
+		} catch(NumberFormatException e) {
+			return BROKEN;
+		}
+	}
+
+	private void report(File file, int moves) {
+		if(moves == LevelSolver.UNSOLVABLE) {
+			Log.warn("Level {} cannot be beaten", file.getName());
+		} else if(moves == BROKEN) {
+			Log.warn("Level {} could not be loaded after {} tries", file.getName(), ATTEMPTS);
+		} else if(moves >= 0 && moves < MIN_MOVES) {
+			Log.warn("Level {} can be beaten in {} moves, fewer than the minimum of {}",
+						file.getName(), moves, MIN_MOVES);
+		} else if(moves == LevelSolver.UNKNOWN) {
+			Log.info("Level {} is too large to check", file.getName());
+		} else {
+			Log.info("Level {} can be beaten in {} moves", file.getName(), moves);
+		}
+	}
+
+
+	// hex SHA-1 of the file's bytes
+	static String contentHash(File file) throws IOException {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buf = new byte[8192];
+			int n;
+			while((n = in.read(buf)) > 0) {
+				md.update(buf, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for(byte b : md.digest()) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		return sb.toString();
+	}
+
+
+	private void loadCache() {
+		if(!cacheFile.exists()) {
+			return;
+		}
+
+		try {
+			InputStream in = new FileInputStream(cacheFile);
+			try {
+				cache.load(in);
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			Log.warn("Unable to read level cache {}", cacheFile);
+		}
+	}
+
+	// called with the cache locked; writes to a temp file first so a
+	// crash never leaves a half-written cache behind
+	private void saveCache() {
+		File tmp = new File(cacheFile.getPath() + ".tmp");
+		try {
+			OutputStream out = new FileOutputStream(tmp);
+			try {
+				cache.store(out, "BlockDude level solutions: content hash = fewest moves");
+			} finally {
+				out.close();
+			}
+
+			if(!tmp.renameTo(cacheFile)) {
+				cacheFile.delete();
+				tmp.renameTo(cacheFile);
+			}
+		} catch(IOException e) {
+			Log.warn("Unable to write level cache {}", cacheFile);
+		}
+	}
+}
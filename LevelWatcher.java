@@ -0,0 +1,120 @@
+/** LevelWatcher
+ *
+ *  Watches the levels directory while the game runs, so edited or new
+ *  .lvl files are picked up without restarting (and recalibrating).
+ *
+ *  Events are collected until the directory has been quiet for a moment,
+ *  since editors often save a file in several writes. Only the files whose
+ *  content changed are parsed again, on this thread; GameRunner is then
+ *  handed the finished level to swap in. A file saved or touched without
+ *  changing is left alone, as its hash is still the one last loaded.
+ **/
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class LevelWatcher implements Runnable {
+	// how long the directory must be quiet before changes are loaded
+	private static final long SETTLE_MS = 200;
+
+	private Path dir;
+	private LevelLibrary levels;
+	private GameRunner game;
+	private WatchService watcher;
+
+	// content hash of each file as last loaded, or as compiled when the
+	// game started; this thread only
+	private HashMap<File, String> hashes = new HashMap<File, String>();
+
+	public LevelWatcher(File dir, LevelLibrary levels, GameRunner game) throws IOException {
+		this.dir = dir.toPath();
+		this.levels = levels;
+		this.game = game;
+
+		watcher = FileSystems.getDefault().newWatchService();
+		this.dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+								StandardWatchEventKinds.ENTRY_MODIFY);
+
+		Thread t = new Thread(this, "level-watcher");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+	}
+
+	public void run() {
+		for(File file : levels.files()) {
+			try {
+				hashes.put(file, CompiledLevel.headerHash(CompiledLevel.compiledFile(file)));
+			} catch(IOException e) {
+				// not compiled yet; any change to it is loaded
+			}
+		}
+
+		try {
+			while(true) {
+				// wait for the first change, then gather the rest of the burst
+				Set<File> changed = new LinkedHashSet<File>();
+				WatchKey key = watcher.take();
+				while(key != null) {
+					collect(key, changed);
+					key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS);
+				}
+
+				for(File file : changed) {
+					reload(file);
+				}
+			}
+		} catch(InterruptedException e) {
+			// shutting down
+		} catch(ClosedWatchServiceException e) {
+			// shutting down
+		}
+	}
+
+	private void collect(WatchKey key, Set<File> changed) {
+		for(WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				Log.warn("Missed some level changes; edit the file again to reload it");
+				continue;
+			}
+
+			// compiled files and the solution cache live here too
+			Path name = (Path) event.context();
+			if(name.toString().endsWith(".lvl")) {
+				changed.add(dir.resolve(name).toFile());
+			}
+		}
+		key.reset();
+	}
+
+	private void reload(File file) {
+		if(!file.isFile()) {
+			return;   // created and removed again, or a directory
+		}
+
+		String hash;
+		try {
+			hash = LevelValidator.contentHash(file);
+		} catch(IOException e) {
+			Log.warn("Unable to read level: {}", e.getMessage());
+			return;
+		}
+		if(hash.equals(hashes.get(file))) {
+			Log.debug("Level {} is unchanged", file.getName());
+			return;
+		}
+		hashes.put(file, hash);
+
+		if(levels.add(file)) {
+			Log.info("New level {}", file.getName());
+			game.levelAdded(file);
+			return;
+		}
+
+		// parses (and recompiles) the file here, off the EDT and sensor thread
+		Log.info("Reloading level {}", file.getName());
+		game.levelReloaded(file, levels.reload(file));
+	}
+}
@@ -0,0 +1,236 @@
+/** Log
+ *
+ *  Logging that never makes the sensor thread wait for the console.
+ *
+ *  A message is a template with {} for each argument, at a level; below
+ *  -Dblockdude.log (debug, info, warn, error or off; info by default) it
+ *  is dropped before anything is formatted. Otherwise the template and its
+ *  arguments go into a slot of a fixed ring, and a background thread
+ *  formats and prints them. If the ring is full the message is dropped
+ *  and counted, rather than waiting. Warnings and errors given a Throwable
+ *  print its stack trace after the message.
+ *
+ *  Each template may be logged RATE_LIMIT times a second; more than that
+ *  are counted, and the count is added to the next one let through. The
+ *  counts are kept without locks, so under contention they are only
+ *  close, which is all they need to be.
+ **/
+
+import java.io.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class Log implements Runnable {
+	static final int DEBUG = 0, INFO = 1, WARN = 2, ERROR = 3, OFF = 4;
+	private static final String[] NAMES = { "debug", "info", "warn", "error", "off" };
+	private static final String[] PREFIXES = { "", "", "WARN ", "ERROR " };
+
+	private static final int CAPACITY = 1024;          // a power of two
+	private static final int MASK = CAPACITY - 1;
+	private static final long IDLE_NANOS = 10000000;   // writer's poll when empty
+
+	private static final int RATE_LIMIT = 5;
+	private static final int LIMITERS = 256;           // a power of two
+	private static final long SECOND = 1000000000L;
+
+	private static final int level = parseLevel(System.getProperty("blockdude.log", "info"));
+
+	// the ring; slot i holds message number n where n % CAPACITY == i,
+	// and published[i] is n + 1 once it is filled in
+	private static final int[] levels = new int[CAPACITY];
+	private static final String[] templates = new String[CAPACITY];
+	private static final Object[] args0 = new Object[CAPACITY];
+	private static final Object[] args1 = new Object[CAPACITY];
+	private static final Object[] args2 = new Object[CAPACITY];
+	private static final int[] argCounts = new int[CAPACITY];
+	private static final Throwable[] thrown = new Throwable[CAPACITY];   // for a stack trace
+	private static final long[] suppressed = new long[CAPACITY];
+	private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+	private static final AtomicLong claimed = new AtomicLong();   // next number to hand out
+	private static volatile long written = 0;                     // next number to print
+	private static final LongAdder dropped = new LongAdder();
+
+	// rate limiting, by template identity
+	private static final String[] limitTemplates = new String[LIMITERS];
+	private static final long[] limitStarts = new long[LIMITERS];
+	private static final int[] limitCounts = new int[LIMITERS];
+	private static final long[] limitSuppressed = new long[LIMITERS];
+
+	private static final Thread writer;
+	static {
+		writer = new Thread(new Log(), "log-writer");
+		writer.setDaemon(true);
+		writer.setPriority(Thread.MIN_PRIORITY);
+		writer.start();
+
+		// print whatever is left when the game exits
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				drain(new StringBuilder());
+			}
+		});
+	}
+
+
+	public static boolean enabled(int at) {
+		return at >= level;
+	}
+
+	public static void debug(String template) { log(DEBUG, template, 0, null, null, null); }
+	public static void debug(String template, Object a) { log(DEBUG, template, 1, a, null, null); }
+	public static void debug(String template, Object a, Object b) { log(DEBUG, template, 2, a, b, null); }
+	public static void debug(String template, Object a, Object b, Object c) { log(DEBUG, template, 3, a, b, c); }
+
+	public static void info(String template) { log(INFO, template, 0, null, null, null); }
+	public static void info(String template, Object a) { log(INFO, template, 1, a, null, null); }
+	public static void info(String template, Object a, Object b) { log(INFO, template, 2, a, b, null); }
+	public static void info(String template, Object a, Object b, Object c) { log(INFO, template, 3, a, b, c); }
+
+	public static void warn(String template) { log(WARN, template, 0, null, null, null); }
+	public static void warn(String template, Object a) { log(WARN, template, 1, a, null, null); }
+	public static void warn(String template, Object a, Object b) { log(WARN, template, 2, a, b, null); }
+	public static void warn(String template, Object a, Object b, Object c) { log(WARN, template, 3, a, b, c); }
+	public static void warn(String template, Throwable t) { log(WARN, template, 1, t, null, null, t); }
+
+	public static void error(String template) { log(ERROR, template, 0, null, null, null); }
+	public static void error(String template, Object a) { log(ERROR, template, 1, a, null, null); }
+	public static void error(String template, Object a, Object b) { log(ERROR, template, 2, a, b, null); }
+	public static void error(String template, Throwable t) { log(ERROR, template, 1, t, null, null, t); }
+
+	// messages lost because the ring was full
+	public static long dropped() {
+		return dropped.sum();
+	}
+
+
+	private static void log(int at, String template, int argCount, Object a, Object b, Object c) {
+		log(at, template, argCount, a, b, c, null);
+	}
+
+	// a {} in the template shows t itself; its stack trace follows the message
+	private static void log(int at, String template, int argCount, Object a, Object b, Object c,
+							Throwable t) {
+		if(at < level) {
+			return;
+		}
+
+		long skipped = admit(template);
+		if(skipped < 0) {
+			return;
+		}
+
+		long n;
+		do {
+			n = claimed.get();
+			if(n - written >= CAPACITY) {
+				dropped.increment();
+				return;
+			}
+		} while(!claimed.compareAndSet(n, n + 1));
+
+		int slot = (int) n & MASK;
+		levels[slot] = at;
+		templates[slot] = template;
+		argCounts[slot] = argCount;
+		args0[slot] = a;
+		args1[slot] = b;
+		args2[slot] = c;
+		thrown[slot] = t;
+		suppressed[slot] = skipped;
+		published.set(slot, n + 1);   // after the fields, so the writer sees them
+
+		if(at >= WARN) {
+			LockSupport.unpark(writer);   // don't keep problems waiting
+		}
+	}
+
+	// -1 if this message is over its template's limit, otherwise how many
+	// were held back since the last one let through
+	private static long admit(String template) {
+		int i = System.identityHashCode(template) & (LIMITERS - 1);
+		long now = System.nanoTime();
+
+		if(limitTemplates[i] != template || now - limitStarts[i] >= SECOND) {
+			long skipped = limitTemplates[i] == template ? limitSuppressed[i] : 0;
+			limitTemplates[i] = template;
+			limitStarts[i] = now;
+			limitCounts[i] = 1;
+			limitSuppressed[i] = 0;
+			return skipped;
+		}
+		if(limitCounts[i] < RATE_LIMIT) {
+			limitCounts[i]++;
+			return 0;
+		}
+		limitSuppressed[i]++;
+		return -1;
+	}
+
+
+	public void run() {
+		StringBuilder sb = new StringBuilder(4096);
+		while(true) {
+			if(!drain(sb)) {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	// prints every published message in order; returns false if there
+	// were none
+	private static synchronized boolean drain(StringBuilder sb) {
+		long n = written;
+		while(published.get((int) n & MASK) == n + 1) {
+			format(sb, (int) n & MASK);
+			n++;
+			written = n;
+		}
+		if(sb.length() == 0) {
+			return false;
+		}
+		System.out.print(sb);
+		System.out.flush();
+		sb.setLength(0);
+		return true;
+	}
+
+	private static void format(StringBuilder sb, int slot) {
+		sb.append(PREFIXES[levels[slot]]);
+
+		String template = templates[slot];
+		int arg = 0, from = 0, at;
+		while(arg < argCounts[slot] && (at = template.indexOf("{}", from)) >= 0) {
+			sb.append(template, from, at);
+			sb.append(arg == 0 ? args0[slot] : arg == 1 ? args1[slot] : args2[slot]);
+			from = at + 2;
+			arg++;
+		}
+		sb.append(template, from, template.length());
+
+		if(suppressed[slot] > 0) {
+			sb.append(" (").append(suppressed[slot]).append(" more like this not shown)");
+		}
+		sb.append(System.lineSeparator());
+
+		if(thrown[slot] != null) {
+			StringWriter trace = new StringWriter();
+			thrown[slot].printStackTrace(new PrintWriter(trace));
+			sb.append(trace);
+		}
+
+		// let the arguments be collected
+		templates[slot] = null;
+		args0[slot] = args1[slot] = args2[slot] = null;
+		thrown[slot] = null;
+	}
+
+	private static int parseLevel(String name) {
+		for(int i=0; i<NAMES.length; i++) {
+			if(NAMES[i].equalsIgnoreCase(name)) {
+				return i;
+			}
+		}
+		return INFO;
+	}
+}
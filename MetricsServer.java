@@ -0,0 +1,172 @@
+/** MetricsServer
+ *
+ *  Serves the game's health at http://localhost:<port>/metrics in the
+ *  Prometheus text format, so a fleet of kiosks can be watched from one
+ *  place. Started by BlockDude when -Dblockdude.metrics.port is set; it
+ *  only listens on the loopback interface.
+ *
+ *  The sensor thread and the game only bump LongAdders and set a couple
+ *  of volatile fields, which is all they pay; everything else, including
+ *  the latency percentiles PipelineStats works out each second, is read
+ *  when the page is requested.
+ **/
+
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.*;
+
+import com.sun.net.httpserver.*;
+
+public class MetricsServer implements HttpHandler {
+	private static final GestureName[] GESTURES = GestureName.values();
+
+	private static final LongAdder frames = new LongAdder();
+	private static volatile int users = 0;
+	private static volatile int tracked = 0;
+
+	// gestures by ordinal, started then stopped
+	private static final LongAdder[] gestures = new LongAdder[GESTURES.length * 2];
+	static {
+		for(int i=0; i<gestures.length; i++) {
+			gestures[i] = new LongAdder();
+		}
+	}
+
+	private GameRunner game;
+
+
+	// a depth frame has been processed, with this many users in view
+	public static void frame(int inScene, int trackedUsers) {
+		frames.increment();
+		users = inScene;
+		tracked = trackedUsers;
+	}
+
+	public static void gesture(GestureName gest, boolean isActivated) {
+		gestures[gest.ordinal() * 2 + (isActivated ? 0 : 1)].increment();
+	}
+
+	public static void start(int port, GameRunner game) throws IOException {
+		HttpServer server = HttpServer.create(
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext("/metrics", new MetricsServer(game));
+		server.start();
+		Log.info("Metrics at http://localhost:{}/metrics", port);
+	}
+
+
+	private MetricsServer(GameRunner game) {
+		this.game = game;
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		byte[] body = metrics().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	String metrics() {
+		StringBuilder sb = new StringBuilder(4096);
+
+		// sensor
+		long[] wait = PipelineStats.window(PipelineStats.Stage.WAIT);
+		header(sb, "blockdude_frames_total", "counter", "Depth frames processed.");
+		sb.append("blockdude_frames_total ").append(frames.sum()).append('\n');
+		header(sb, "blockdude_frame_rate", "gauge", "Depth frames processed in the last second.");
+		sb.append("blockdude_frame_rate ").append(wait[3]).append('\n');
+		header(sb, "blockdude_users", "gauge", "Users in view at the last frame.");
+		sb.append("blockdude_users ").append(users).append('\n');
+		header(sb, "blockdude_tracked_users", "gauge", "Users with tracked skeletons at the last frame.");
+		sb.append("blockdude_tracked_users ").append(tracked).append('\n');
+		header(sb, "blockdude_preview_dropped_total", "counter", "Depth frames never coloured for the preview because it had fallen behind.");
+		sb.append("blockdude_preview_dropped_total ").append(DepthStage.dropped()).append('\n');
+		header(sb, "blockdude_quality_tier", "gauge", "How far drawing has been cut back to keep up; 0 is full quality.");
+		sb.append("blockdude_quality_tier ").append(QualityGovernor.tier()).append('\n');
+		header(sb, "blockdude_idle", "gauge", "1 while nobody has been in view for a while and processing is cut back.");
+		sb.append("blockdude_idle ").append(IdleMode.isIdle() ? 1 : 0).append('\n');
+		header(sb, "blockdude_mode_seconds_total", "counter", "Time spent active and idle.");
+		sb.append("blockdude_mode_seconds_total{mode=\"active\"} ").append(IdleMode.seconds(false)).append('\n');
+		sb.append("blockdude_mode_seconds_total{mode=\"idle\"} ").append(IdleMode.seconds(true)).append('\n');
+
+		header(sb, "blockdude_gestures_total", "counter", "Gestures passed to the game, by gesture and whether it started or stopped.");
+		for(int i=0; i<gestures.length; i++) {
+			long n = gestures[i].sum();
+			if(n > 0) {
+				sb.append("blockdude_gestures_total{gesture=\"").append(GESTURES[i / 2])
+				  .append("\",state=\"").append(i % 2 == 0 ? "started" : "stopped")
+				  .append("\"} ").append(n).append('\n');
+			}
+		}
+
+		// pipeline latency: quantiles over the last second, count and sum
+		// since the start, so rates can be taken from them
+		header(sb, "blockdude_stage_latency_seconds", "summary", "Time taken by each pipeline stage; quantiles are over the last second. Photon is depth frame to game paint.");
+		for(PipelineStats.Stage stage : PipelineStats.Stage.values()) {
+			long[] w = PipelineStats.window(stage);
+			quantile(sb, stage, "0.5", w[0]);
+			quantile(sb, stage, "0.99", w[1]);
+			sb.append("blockdude_stage_latency_seconds_sum{stage=\"").append(stage.label)
+			  .append("\"} ").append(stage.histogram.getSum() / 1000000000.0).append('\n');
+			sb.append("blockdude_stage_latency_seconds_count{stage=\"").append(stage.label)
+			  .append("\"} ").append(stage.histogram.getCount()).append('\n');
+		}
+		header(sb, "blockdude_stage_latency_max_seconds", "gauge", "Longest time taken by each pipeline stage over the last second.");
+		for(PipelineStats.Stage stage : PipelineStats.Stage.values()) {
+			sb.append("blockdude_stage_latency_max_seconds{stage=\"").append(stage.label)
+			  .append("\"} ").append(seconds(PipelineStats.window(stage)[2])).append('\n');
+		}
+
+		// game
+		header(sb, "blockdude_level", "gauge", "Index of the level being played.");
+		sb.append("blockdude_level ").append(game.getLevel()).append('\n');
+		header(sb, "blockdude_levels", "gauge", "Levels in the level directory.");
+		sb.append("blockdude_levels ").append(game.getLevelFiles().length).append('\n');
+		header(sb, "blockdude_level_moves", "gauge", "Moves made on the current level.");
+		sb.append("blockdude_level_moves ").append(game.getMoves()).append('\n');
+		header(sb, "blockdude_finished", "gauge", "1 once every level has been beaten.");
+		sb.append("blockdude_finished ").append(game.isDone() ? 1 : 0).append('\n');
+		header(sb, "blockdude_log_dropped_total", "counter", "Log messages lost because the log writer fell behind.");
+		sb.append("blockdude_log_dropped_total ").append(Log.dropped()).append('\n');
+
+		// JVM
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		header(sb, "jvm_heap_used_bytes", "gauge", "Heap in use.");
+		sb.append("jvm_heap_used_bytes ").append(heap.getUsed()).append('\n');
+		header(sb, "jvm_heap_committed_bytes", "gauge", "Heap reserved from the OS.");
+		sb.append("jvm_heap_committed_bytes ").append(heap.getCommitted()).append('\n');
+		header(sb, "jvm_heap_max_bytes", "gauge", "Largest the heap may grow.");
+		sb.append("jvm_heap_max_bytes ").append(heap.getMax()).append('\n');
+
+		header(sb, "jvm_gc_collections_total", "counter", "Garbage collections, by collector.");
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			sb.append("jvm_gc_collections_total{gc=\"").append(gc.getName())
+			  .append("\"} ").append(gc.getCollectionCount()).append('\n');
+		}
+		header(sb, "jvm_gc_pause_seconds_total", "counter", "Time spent collecting garbage, by collector.");
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			sb.append("jvm_gc_pause_seconds_total{gc=\"").append(gc.getName())
+			  .append("\"} ").append(gc.getCollectionTime() / 1000.0).append('\n');
+		}
+
+		return sb.toString();
+	}
+
+	private static void header(StringBuilder sb, String name, String type, String help) {
+		sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+	}
+
+	private static void quantile(StringBuilder sb, PipelineStats.Stage stage, String q, long micros) {
+		sb.append("blockdude_stage_latency_seconds{stage=\"").append(stage.label)
+		  .append("\",quantile=\"").append(q).append("\"} ").append(seconds(micros)).append('\n');
+	}
+
+	private static double seconds(long micros) {
+		return micros / 1000000.0;
+	}
+}
@@ -0,0 +1,111 @@
+/** MotionToPhoton
+ *
+ *  Time from a depth frame arriving to the first paint that shows what a
+ *  gesture seen in it did to the game, kept per gesture.
+ *
+ *  GameRunner calls acted() when a tagged gesture changes what is on
+ *  screen, taken() when it copies the game to draw it, under the same
+ *  lock, and painted() once that copy is drawn. Only the gestures waiting
+ *  at taken() are recorded, as those are the ones the frame shows; any
+ *  that act while it is drawn wait for the next. If a gesture repeats
+ *  before a paint, the older frame is kept, since that is when the player
+ *  moved. Only one frame per gesture waits at a time, so nothing is
+ *  allocated.
+ *
+ *  With -Dblockdude.trace=true each one is also printed as it is painted.
+ **/
+
+import java.util.concurrent.atomic.*;
+
+public class MotionToPhoton {
+	private static final GestureName[] GESTURES = GestureName.values();
+	private static final boolean TRACE = Boolean.getBoolean("blockdude.trace");
+
+	private static final LatencyHistogram[] histograms = new LatencyHistogram[GESTURES.length];
+	static {
+		for(int i=0; i<GESTURES.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	// frame time and id of the oldest unpainted frame, by gesture; 0 if none
+	private static final AtomicLongArray pendingNanos = new AtomicLongArray(GESTURES.length);
+	private static final AtomicLongArray pendingIds = new AtomicLongArray(GESTURES.length);
+
+	// the same for the frame being drawn; only the painting thread uses these
+	private static final long[] shownNanos = new long[GESTURES.length];
+	private static final long[] shownIds = new long[GESTURES.length];
+
+	// counts at the last report, for reporting just the interval
+	private static final long[][] reported = new long[GESTURES.length][LatencyHistogram.BUCKETS];
+	private static final long[] counts = new long[LatencyHistogram.BUCKETS];
+
+
+	// a gesture from this frame has changed what will be drawn next
+	public static void acted(GestureName gest, FrameTag tag) {
+		int i = gest.ordinal();
+		if(pendingNanos.compareAndSet(i, 0, tag.nanos)) {
+			pendingIds.set(i, tag.id);
+		}
+	}
+
+	// the game has just been copied to be drawn, so the gestures that have
+	// acted so far are the ones this frame will show
+	public static void taken() {
+		for(int i=0; i<GESTURES.length; i++) {
+			if(pendingNanos.get(i) == 0) {
+				continue;
+			}
+			long id = pendingIds.get(i);
+			long nanos = pendingNanos.getAndSet(i, 0);
+			if(nanos != 0 && shownNanos[i] == 0) {
+				shownNanos[i] = nanos;
+				shownIds[i] = id;
+			}
+		}
+	}
+
+	// the frame copied at the last taken() has just been drawn
+	public static void painted() {
+		long now = 0;
+		for(int i=0; i<GESTURES.length; i++) {
+			long nanos = shownNanos[i];
+			if(nanos == 0) {
+				continue;
+			}
+			shownNanos[i] = 0;
+
+			if(now == 0) {
+				now = System.nanoTime();
+			}
+			histograms[i].record(now - nanos);
+			PipelineStats.record(PipelineStats.Stage.PHOTON, now - nanos);
+
+			if(TRACE) {
+				Log.info("Frame {} {} painted after {} ms",
+							shownIds[i], GESTURES[i], (now - nanos) / 100000 / 10.0);
+			}
+		}
+	}
+
+	// p50/p99/max in ms for each gesture recorded since the last call, or
+	// null if there were none
+	static synchronized String report() {
+		StringBuilder sb = null;
+		for(int i=0; i<GESTURES.length; i++) {
+			histograms[i].snapshot(counts);
+			long n = LatencyHistogram.total(counts, reported[i]);
+			if(n > 0) {
+				if(sb == null) {
+					sb = new StringBuilder("Motion-to-photon p50/p99/max ms:");
+				}
+				sb.append(String.format(" %s %.1f/%.1f/%.1f (%d)", GESTURES[i],
+						LatencyHistogram.percentile(counts, reported[i], 0.50) / 1000.0,
+						LatencyHistogram.percentile(counts, reported[i], 0.99) / 1000.0,
+						LatencyHistogram.highest(counts, reported[i]) / 1000.0, n));
+			}
+			System.arraycopy(counts, 0, reported[i], 0, LatencyHistogram.BUCKETS);
+		}
+		return sb == null ? null : sb.toString();
+	}
+}
@@ -0,0 +1,365 @@
+/** MoveJournal
+ *
+ *  Records the moves made on a board so they can be undone, redone,
+ *  restarted or scrubbed back through.
+ *
+ *  Each move stores only the one cell a lift or place changed, plus the
+ *  player fields before and after, in a fixed-size ring. Every so often a
+ *  compact snapshot (just the cells that differ from the starting board)
+ *  is kept as well, so positions older than the ring can still be reached.
+ *  Snapshots are thinned out as the session grows, keeping memory bounded.
+ *
+ *  The starting tiles are only remembered for cells that have changed, so
+ *  a journal on a huge board costs nothing until moves are made.
+ **/
+
+import java.util.*;
+
+public class MoveJournal {
+	private static final int DEFAULT_CAPACITY = 4096;
+	private static final int MAX_SNAPSHOTS = 64;
+
+	private final Board board;
+
+	// the starting player position, for restarts
+	private final int[] startState;
+
+	// every cell changed since the start, with its starting tile, so
+	// restarts and snapshot diffs only visit those
+	private final BitSet touched = new BitSet();
+	private int[] touchedList = new int[64];
+	private byte[] startTiles = new byte[64];
+	private int touchedCount = 0;
+
+	// ring of moves; move number n is kept in slot n % capacity
+	private final int capacity;
+	private final int[] cell;
+	private final byte[] oldTile;
+	private final byte[] newTile;
+	private final long[] before;
+	private final long[] after;
+
+	private long first = 0;    // oldest move still in the ring
+	private long cursor = 0;   // moves currently applied
+	private long last = 0;     // moves that can be redone up to
+
+	// snapshots, oldest first, taken every `interval` moves
+	private ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>();
+	private int interval = 256;
+
+	// bumped before every change to the board, so a copy taken on another
+	// thread can tell whether it raced one
+	private volatile long edits = 0;
+
+	private static class Snapshot {
+		final long move;
+		final long state;
+		final int[] cells;
+		final byte[] tiles;
+
+		Snapshot(long move, long state, int[] cells, byte[] tiles) {
+			this.move = move;
+			this.state = state;
+			this.cells = cells;
+			this.tiles = tiles;
+		}
+	}
+
+
+	// the board's tiles as the journal knows them: every touched cell, with
+	// its starting tile and its tile now, and the player fields. Costs as
+	// much as the cells touched, never the whole board.
+	public static class Position {
+		final long edits;
+		final long state;
+		final int[] cells;
+		final byte[] startTiles;
+		final byte[] tiles;
+
+		Position(long edits, long state, int[] cells, byte[] startTiles, byte[] tiles) {
+			this.edits = edits;
+			this.state = state;
+			this.cells = cells;
+			this.startTiles = startTiles;
+			this.tiles = tiles;
+		}
+	}
+
+
+	public MoveJournal(Board board) {
+		this(board, DEFAULT_CAPACITY);
+	}
+
+	public MoveJournal(Board board, int capacity) {
+		this.board = board;
+		this.capacity = capacity;
+
+		startState = board.state.clone();
+
+		cell = new int[capacity];
+		oldTile = new byte[capacity];
+		newTile = new byte[capacity];
+		before = new long[capacity];
+		after = new long[capacity];
+	}
+
+	// number of moves currently applied since the start
+	public long getMove() {
+		return cursor;
+	}
+
+	// oldest move that can be reached exactly; older ones jump to a snapshot
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	// changes made to the board so far; safe to read from any thread
+	public long getEdits() {
+		return edits;
+	}
+
+	public Position position() {
+		int[] cells = Arrays.copyOf(touchedList, touchedCount);
+		byte[] starts = Arrays.copyOf(startTiles, touchedCount);
+		byte[] tiles = new byte[touchedCount];
+		for(int i=0; i<touchedCount; i++) {
+			tiles[i] = board.cells[cells[i]];
+		}
+		return new Position(edits, pack(), cells, starts, tiles);
+	}
+
+	// moves a copy of the board from one position to another. The copy
+	// must be at `from`: taken while the board was there (getEdits() equal
+	// to its edits), or moved there by an earlier call. The copy is fully
+	// decoded first, or a chunk decoded later would undo the cells set here.
+	public static void apply(Position from, Position pos, Board copy) {
+		byte[] cells = copy.cells();
+		for(int i=0; i<from.cells.length; i++) {
+			cells[from.cells[i]] = from.startTiles[i];
+		}
+		for(int i=0; i<pos.cells.length; i++) {
+			cells[pos.cells[i]] = pos.tiles[i];
+		}
+		int[] st = copy.state;
+		st[Board.PLAYER] = (int) (pos.state >>> 32);
+		st[Board.HEIGHT] = (int) ((pos.state & 0xffffffffL) >>> 1);
+		st[Board.CARRYING] = (int) (pos.state & 1);
+		st[Board.CHANGED] = -1;
+	}
+
+
+	// applies an action to the board and records it if it did anything
+	public boolean step(int action) {
+		long prev = pack();
+		edits++;
+		if(!board.step(action)) {
+			return false;
+		}
+
+		// a new move throws away anything that could have been redone
+		last = cursor;
+		dropSnapshotsAfter(cursor);
+
+		int slot = (int) (cursor % capacity);
+		int changed = board.lastChanged();
+		cell[slot] = changed;
+		if(changed >= 0) {
+			oldTile[slot] = (byte) board.lastReplaced();
+			newTile[slot] = board.cells[changed];
+			markTouched(changed, oldTile[slot]);
+		}
+		before[slot] = prev;
+		after[slot] = pack();
+
+		cursor++;
+		last = cursor;
+		if(last - first > capacity) {
+			first++;
+		}
+
+		if(cursor % interval == 0) {
+			takeSnapshot();
+		}
+		return true;
+	}
+
+	public boolean undo() {
+		if(cursor == first) {
+			return false;
+		}
+
+		edits++;
+		cursor--;
+		int slot = (int) (cursor % capacity);
+		if(cell[slot] >= 0) {
+			board.cells[cell[slot]] = oldTile[slot];
+		}
+		unpack(before[slot]);
+		return true;
+	}
+
+	public boolean redo() {
+		if(cursor == last) {
+			return false;
+		}
+
+		edits++;
+		int slot = (int) (cursor % capacity);
+		if(cell[slot] >= 0) {
+			board.cells[cell[slot]] = newTile[slot];
+		}
+		unpack(after[slot]);
+		cursor++;
+		return true;
+	}
+
+	// back to the starting position, touching only the cells that changed
+	public void restart() {
+		edits++;
+		revertTouched();
+		touched.clear();
+		touchedCount = 0;
+
+		System.arraycopy(startState, 0, board.state, 0, Board.STATE_SIZE);
+		first = cursor = last = 0;
+		snapshots.clear();
+		interval = 256;
+	}
+
+	// moves to the given move number, by undo/redo from the nearest of the
+	// current position and the snapshots. Positions older than the ring
+	// can only be reached at a snapshot; going there drops the redo history.
+	public void seek(long move) {
+		move = Math.max(0, Math.min(move, last));
+
+		if(move < first) {
+			Snapshot snap = null;
+			for(Snapshot s : snapshots) {
+				if(s.move <= move) {
+					snap = s;
+				}
+			}
+
+			if(snap == null) {
+				restart();
+			} else {
+				restore(snap);
+				first = last = cursor;
+				dropSnapshotsAfter(cursor);
+			}
+			return;
+		}
+
+		Snapshot nearest = null;
+		long distance = Math.abs(cursor - move);
+		for(Snapshot s : snapshots) {
+			if(s.move >= first && s.move <= last && Math.abs(s.move - move) < distance) {
+				nearest = s;
+				distance = Math.abs(s.move - move);
+			}
+		}
+		if(nearest != null) {
+			restore(nearest);
+		}
+
+		while(cursor > move) {
+			undo();
+		}
+		while(cursor < move) {
+			redo();
+		}
+	}
+
+
+	private long pack() {
+		int[] st = board.state;
+		return ((long) st[Board.PLAYER] << 32) | ((long) st[Board.HEIGHT] << 1)
+				| st[Board.CARRYING];
+	}
+
+	private void unpack(long packed) {
+		int[] st = board.state;
+		st[Board.PLAYER] = (int) (packed >>> 32);
+		st[Board.HEIGHT] = (int) ((packed & 0xffffffffL) >>> 1);
+		st[Board.CARRYING] = (int) (packed & 1);
+		st[Board.CHANGED] = -1;
+	}
+
+	// the first time a cell changes, the tile it replaced is its start tile
+	private void markTouched(int c, byte startTile) {
+		if(touched.get(c)) {
+			return;
+		}
+		touched.set(c);
+
+		if(touchedCount == touchedList.length) {
+			touchedList = Arrays.copyOf(touchedList, touchedCount*2);
+			startTiles = Arrays.copyOf(startTiles, touchedCount*2);
+		}
+		touchedList[touchedCount] = c;
+		startTiles[touchedCount] = startTile;
+		touchedCount++;
+	}
+
+	private void revertTouched() {
+		for(int i=0; i<touchedCount; i++) {
+			board.cells[touchedList[i]] = startTiles[i];
+		}
+	}
+
+
+	// stores only the cells that differ from the starting board
+	private void takeSnapshot() {
+		int n = 0;
+		for(int i=0; i<touchedCount; i++) {
+			if(board.cells[touchedList[i]] != startTiles[i]) {
+				n++;
+			}
+		}
+
+		int[] cells = new int[n];
+		byte[] tiles = new byte[n];
+		n = 0;
+		for(int i=0; i<touchedCount; i++) {
+			int c = touchedList[i];
+			if(board.cells[c] != startTiles[i]) {
+				cells[n] = c;
+				tiles[n] = board.cells[c];
+				n++;
+			}
+		}
+
+		snapshots.add(new Snapshot(cursor, pack(), cells, tiles));
+
+		// keep every other snapshot once there are too many, so long
+		// sessions are covered more coarsely instead of using more memory
+		if(snapshots.size() > MAX_SNAPSHOTS) {
+			ArrayList<Snapshot> thinned = new ArrayList<Snapshot>();
+			for(int i=1; i<snapshots.size(); i+=2) {
+				thinned.add(snapshots.get(i));
+			}
+			snapshots = thinned;
+			interval *= 2;
+		}
+	}
+
+	private void restore(Snapshot snap) {
+		edits++;
+		revertTouched();
+		for(int i=0; i<snap.cells.length; i++) {
+			board.cells[snap.cells[i]] = snap.tiles[i];
+		}
+		unpack(snap.state);
+		cursor = snap.move;
+	}
+
+	private void dropSnapshotsAfter(long move) {
+		while(!snapshots.isEmpty() && snapshots.get(snapshots.size()-1).move > move) {
+			snapshots.remove(snapshots.size()-1);
+		}
+	}
+}
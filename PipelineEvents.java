@@ -0,0 +1,96 @@
+/** PipelineEvents
+ *
+ *  Flight recorder events for the sensor and game pipeline, so a recording
+ *  left running on a kiosk shows what each frame, gesture and move cost
+ *  when it stutters. See run.sh for the recording it starts.
+ *
+ *  Each event is timed from begin() to commit(), and carries the number of
+ *  the depth frame it came from (see FrameTag) where there is one, so a
+ *  gesture can be followed to its move and the paint that showed it. Stack
+ *  traces are left off to keep them cheap; when no recording is running,
+ *  commit() does nothing.
+ **/
+
+import jdk.jfr.*;
+
+public class PipelineEvents {
+	@Name("blockdude.DepthFrame")
+	@Label("Depth Frame Processed")
+	@Description("Skeleton update for one sensor frame, and handing its depth maps to the preview thread")
+	@Category({ "BlockDude", "Sensor" })
+	@StackTrace(false)
+	static class DepthFrame extends Event {
+		@Label("Frame") long frame;
+		@Label("Pixels") int pixels;         // handed off to be coloured; 0 if skipped
+		@Label("Users") int users;
+		@Label("Tracked Users") int tracked;
+	}
+
+	@Name("blockdude.DepthColoured")
+	@Label("Depth Preview Coloured")
+	@Description("Depth histogram and colouring of one sensor frame's preview, on the preview thread")
+	@Category({ "BlockDude", "Sensor" })
+	@StackTrace(false)
+	static class DepthColoured extends Event {
+		@Label("Frame") long frame;
+		@Label("Pixels") int pixels;
+		@Label("User Pixels") int userPixels;
+	}
+
+	@Name("blockdude.SkeletonUpdate")
+	@Label("Skeleton Update")
+	@Description("Joint update and gesture checks for one tracked user")
+	@Category({ "BlockDude", "Sensor" })
+	@StackTrace(false)
+	static class SkeletonUpdate extends Event {
+		@Label("Frame") long frame;
+		@Label("User") int user;
+	}
+
+	@Name("blockdude.Gesture")
+	@Label("Gesture")
+	@Description("A simple gesture starting or stopping, timed over the game's handling of it")
+	@Category({ "BlockDude", "Gestures" })
+	@StackTrace(false)
+	static class Gesture extends Event {
+		@Label("Frame") long frame;
+		@Label("User") int user;
+		@Label("Gesture") String gesture;
+		@Label("Started") boolean started;
+	}
+
+	@Name("blockdude.Sequence")
+	@Label("Sequence Matched")
+	@Description("A complex gesture found in a user's gesture sequence, timed over the game's handling of it")
+	@Category({ "BlockDude", "Gestures" })
+	@StackTrace(false)
+	static class Sequence extends Event {
+		@Label("Frame") long frame;
+		@Label("User") int user;
+		@Label("Gesture") String gesture;
+	}
+
+	@Name("blockdude.Move")
+	@Label("Level Move")
+	@Description("A gesture, timer tick or key applied to the level, including waiting for the game lock")
+	@Category({ "BlockDude", "Game" })
+	@StackTrace(false)
+	static class Move extends Event {
+		@Label("Frame") long frame;          // 0 for ticks, keys and replays
+		@Label("Source") String source;      // "gesture", "tick" or "key"
+		@Label("Action") String action;
+		@Label("Level") int level;
+		@Label("Changed") boolean changed;   // asked for a repaint
+	}
+
+	@Name("blockdude.Paint")
+	@Label("Panel Painted")
+	@Category({ "BlockDude", "Painting" })
+	@StackTrace(false)
+	static class Paint extends Event {
+		@Label("Panel") String panel;        // "game" or "depth"
+		@Label("Frame") long frame;          // depth frame shown; 0 for the game
+		@Label("Width") int width;           // area repainted
+		@Label("Height") int height;
+	}
+}
@@ -0,0 +1,156 @@
+/** PipelineStats
+ *
+ *  How long each stage of handling a depth frame takes, from the wait for
+ *  the sensor to the paint, each kept in its own LatencyHistogram.
+ *
+ *  A daemon thread works out p50, p99 and max for the last second for the
+ *  on-screen overlay, and prints them for the last interval every
+ *  -Dblockdude.stats.log seconds (10 by default, 0 for never). Gesture and
+ *  sequence times include the game handling the gestures trigger, which
+ *  is also shown on its own. The log also breaks the photon times down by
+ *  gesture.
+ **/
+
+import java.awt.*;
+
+public class PipelineStats implements Runnable {
+	enum Stage {
+		WAIT("wait"),              // context.waitAnyUpdateAll()
+		HISTOGRAM("histogram"),    // depth histogram
+		COLORIZE("colorize"),      // depth image colouring
+		JOINTS("joints"),          // skeleton joint update
+		GESTURES("gestures"),      // SkeletonsGestures.checkGests()
+		SEQUENCES("sequences"),    // GestureSequences.checkSeqs()
+		GAME("game"),              // GameRunner.pose()
+		DEPTH_PAINT("depthpaint"), // TrackerPanel painting the depth view
+		GAME_PAINT("gamepaint"),   // GameRunner painting the game
+		PHOTON("photon");          // depth frame to the game paint showing a
+		                           // gesture's effect; see MotionToPhoton
+
+		final String label;
+		final LatencyHistogram histogram = new LatencyHistogram();
+
+		Stage(String label) {
+			this.label = label;
+		}
+	}
+
+	private static final long OVERLAY_MS = 1000;
+
+	private static PipelineStats reporter;
+
+	// overlay text, replaced as a whole once a second
+	private static volatile String[] lines = new String[0];
+
+	// p50, p99 and max in microseconds, and the count, for the last
+	// second by stage; replaced as a whole with the overlay text
+	private static volatile long[][] window = new long[Stage.values().length][4];
+
+	private long logMillis;
+
+
+	// records the time since start for a stage; returns the current time,
+	// so consecutive stages can be timed with one call each
+	public static long lap(Stage stage, long start) {
+		long now = System.nanoTime();
+		stage.histogram.record(now - start);
+		return now;
+	}
+
+	public static void record(Stage stage, long nanos) {
+		stage.histogram.record(nanos);
+	}
+
+	// the last second's p50, p99 and max in microseconds for a stage,
+	// and how many times it ran
+	public static long[] window(Stage stage) {
+		return window[stage.ordinal()];
+	}
+
+	// starts the reporting thread, once
+	public static synchronized void start() {
+		if(reporter == null) {
+			reporter = new PipelineStats(Long.getLong("blockdude.stats.log", 10) * 1000);
+			Thread t = new Thread(reporter, "pipeline-stats");
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	// draws the last second's figures, one line per stage, upwards from
+	// the bottom-left corner at x, y
+	public static void drawOverlay(Graphics2D g2d, int x, int y) {
+		String[] text = lines;
+		int step = g2d.getFontMetrics().getHeight();
+		for(int i=text.length-1; i>=0; i--) {
+			g2d.drawString(text[i], x, y);
+			y -= step;
+		}
+	}
+
+
+	private PipelineStats(long logMillis) {
+		this.logMillis = logMillis;
+	}
+
+	public void run() {
+		Stage[] stages = Stage.values();
+		long[][] now = new long[stages.length][LatencyHistogram.BUCKETS];
+		long[][] lastOverlay = new long[stages.length][LatencyHistogram.BUCKETS];
+		long[][] lastLog = new long[stages.length][LatencyHistogram.BUCKETS];
+		long nextLog = System.currentTimeMillis() + logMillis;
+
+		while(true) {
+			try {
+				Thread.sleep(OVERLAY_MS);
+			} catch(InterruptedException e) {
+				return;
+			}
+
+			for(int i=0; i<stages.length; i++) {
+				stages[i].histogram.snapshot(now[i]);
+			}
+
+			String[] text = new String[stages.length + 1];
+			long[][] figures = new long[stages.length][];
+			text[0] = "ms         p50    p99    max";
+			for(int i=0; i<stages.length; i++) {
+				text[i+1] = String.format("%-11s%s", stages[i].label, summary(now[i], lastOverlay[i], "%6.1f "));
+				figures[i] = new long[] {
+					LatencyHistogram.percentile(now[i], lastOverlay[i], 0.50),
+					LatencyHistogram.percentile(now[i], lastOverlay[i], 0.99),
+					LatencyHistogram.highest(now[i], lastOverlay[i]),
+					LatencyHistogram.total(now[i], lastOverlay[i]) };
+				System.arraycopy(now[i], 0, lastOverlay[i], 0, LatencyHistogram.BUCKETS);
+			}
+			lines = text;
+			window = figures;
+
+			if(logMillis > 0 && System.currentTimeMillis() >= nextLog) {
+				StringBuilder sb = new StringBuilder("Pipeline p50/p99/max ms:");
+				for(int i=0; i<stages.length; i++) {
+					sb.append(' ').append(stages[i].label).append(' ')
+					  .append(summary(now[i], lastLog[i], "%.1f/").replaceAll("/$", ""));
+					System.arraycopy(now[i], 0, lastLog[i], 0, LatencyHistogram.BUCKETS);
+				}
+				Log.info("{}", sb.toString());
+				String photons = MotionToPhoton.report();
+				if(photons != null) {
+					Log.info("{}", photons);
+				}
+				nextLog += logMillis;
+			}
+		}
+	}
+
+	// p50, p99 and max in milliseconds, each in the given format
+	private static String summary(long[] now, long[] before, String format) {
+		if(LatencyHistogram.total(now, before) == 0) {
+			return String.format(format + format + format, 0.0, 0.0, 0.0);
+		}
+		return String.format(format + format + format,
+				LatencyHistogram.percentile(now, before, 0.50) / 1000.0,
+				LatencyHistogram.percentile(now, before, 0.99) / 1000.0,
+				LatencyHistogram.highest(now, before) / 1000.0);
+	}
+}
@@ -0,0 +1,142 @@
+/** QualityGovernor
+ *
+ *  Trades drawing quality for time when frames run over budget, one tier
+ *  at a time:
+ *
+ *    1  no antialiased text, and rendering hints set for speed
+ *    2  the depth preview coloured every other frame
+ *    3  the depth preview coloured at half resolution
+ *    4  skeletons drawn as thin lines, without heads
+ *
+ *  Each tier keeps the ones before it. Only drawing is cut back; joints,
+ *  gestures and the game itself are always updated every frame.
+ *
+ *  The sensor thread, DepthStage and painting each have a thread of their
+ *  own, so each is measured on its own. Every WINDOW sensor frames, the
+ *  mean time each spent per frame is compared with the period between
+ *  frames (-Dblockdude.quality.budget ms, 33 for the sensor's 30 fps),
+ *  and the busiest one decides: above HIGH of the budget steps down a
+ *  tier, and only after RECOVER windows in a row under LOW does it step
+ *  back up. If that step up is
+ *  undone within a few windows, the wait before the next one doubles, so
+ *  it doesn't flip back and forth on a borderline load; once a step up
+ *  has held for half a minute the wait is short again.
+ *
+ *  -Dblockdude.quality=<tier> fixes the tier instead.
+ **/
+
+import java.util.concurrent.atomic.*;
+
+public class QualityGovernor {
+	static final int FULL = 0, NO_ANTIALIAS = 1, HALF_RATE = 2, HALF_RES = 3, SIMPLE_SKELETON = 4;
+	private static final String[] NAMES = {
+		"full", "no antialiasing", "half-rate preview", "half-resolution preview", "simple skeletons" };
+
+	private static final int WINDOW = 15;          // frames, half a second
+	private static final double HIGH = 0.85, LOW = 0.5;
+	private static final int RECOVER = 4;          // windows, at first
+	private static final int MAX_RECOVER = 64;
+	private static final int RELAPSE = 4;          // windows after a step up that count as undoing it
+	private static final int SETTLED = 60;         // windows after a step up that count as it holding
+
+	private static final long BUDGET = Integer.getInteger("blockdude.quality.budget", 33) * 1000000L;
+	private static final Integer FIXED = Integer.getInteger("blockdude.quality");
+
+	private static volatile int tier = FIXED == null ? FULL : Math.max(FULL, Math.min(SIMPLE_SKELETON, FIXED));
+
+	// time spent since the window began, by thread
+	private static final AtomicLong stageNanos = new AtomicLong();
+	private static final AtomicLong paintNanos = new AtomicLong();
+	private static final String[] THREADS = { "Handling frames", "Colouring the preview", "Painting" };
+
+	// sensor thread only
+	private static long frameNanos = 0;
+	private static int frames = 0;
+	private static int calm = 0;               // windows in a row under LOW
+	private static int recover = RECOVER;
+	private static int sinceStepUp = Integer.MAX_VALUE / 2;   // windows
+
+
+	public static int tier() {
+		return tier;
+	}
+
+	public static boolean antialias() {
+		return tier < NO_ANTIALIAS;
+	}
+
+	// whether to colour the depth preview for this sensor frame
+	public static boolean preview(long frameID) {
+		return tier < HALF_RATE || (frameID & 1) == 0;
+	}
+
+	// pixels per sample of the depth preview, each way
+	public static int previewStep() {
+		return tier < HALF_RES ? 1 : 2;
+	}
+
+	public static boolean simpleSkeletons() {
+		return tier >= SIMPLE_SKELETON;
+	}
+
+	// a panel took this long to paint
+	public static void painted(long nanos) {
+		paintNanos.addAndGet(nanos);
+	}
+
+	// DepthStage took this long to colour the preview
+	public static void coloured(long nanos) {
+		stageNanos.addAndGet(nanos);
+	}
+
+	// the sensor thread has spent this long on a frame
+	public static void frame(long nanos) {
+		frameNanos += nanos;
+		if(++frames < WINDOW) {
+			return;
+		}
+
+		// each thread has the whole of every frame period to itself
+		long[] means = { frameNanos / frames, stageNanos.getAndSet(0) / frames,
+							paintNanos.getAndSet(0) / frames };
+		int busiest = 0;
+		for(int i=1; i<means.length; i++) {
+			if(means[i] > means[busiest]) {
+				busiest = i;
+			}
+		}
+		long mean = means[busiest];
+		frameNanos = 0;
+		frames = 0;
+		if(++sinceStepUp > SETTLED) {
+			recover = RECOVER;   // the last step up held; be quick again
+		}
+		if(FIXED != null) {
+			return;
+		}
+
+		if(mean > BUDGET * HIGH) {
+			calm = 0;
+			if(tier < SIMPLE_SKELETON) {
+				if(sinceStepUp <= RELAPSE) {
+					recover = Math.min(recover * 2, MAX_RECOVER);
+				}
+				change(tier + 1, busiest, mean);
+			}
+		} else if(mean < BUDGET * LOW) {
+			if(tier > FULL && ++calm >= recover) {
+				calm = 0;
+				sinceStepUp = 0;
+				change(tier - 1, busiest, mean);
+			}
+		} else {
+			calm = 0;
+		}
+	}
+
+	private static void change(int to, int busiest, long mean) {
+		tier = to;
+		Log.info("{} took {} ms a frame, drawing quality now {}",
+					THREADS[busiest], mean / 1000000, NAMES[to]);
+	}
+}
@@ -0,0 +1,241 @@
+/** SkeletonOverlay
+ *
+ *  Draws the users' skeletons, heads and status labels over the depth
+ *  image, from a snapshot the sensor thread fills in after each update.
+ *
+ *  Painting never calls into OpenNI and allocates nothing: colours,
+ *  the limb stroke and the status labels are made ahead of time, and the
+ *  snapshots are three reused Frames handed between the sensor thread and
+ *  the painter through an atomic slot (as TrackerPanel does with the
+ *  depth image).
+ **/
+
+import java.awt.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+import org.OpenNI.*;
+
+public class SkeletonOverlay {
+	static final int MAX_USERS = 16;
+
+	// user states, as shown by the label at each user's centre of mass
+	static final int TRACKING    = 0;
+	static final int CALIBRATING = 1;
+	static final int LOOKING     = 2;   // waiting for the calibration pose
+
+	// joints kept in a Frame, by index
+	static final SkeletonJoint[] JOINTS = {
+		SkeletonJoint.HEAD, SkeletonJoint.NECK,
+		SkeletonJoint.LEFT_SHOULDER, SkeletonJoint.LEFT_ELBOW, SkeletonJoint.LEFT_HAND,
+		SkeletonJoint.RIGHT_SHOULDER, SkeletonJoint.RIGHT_ELBOW, SkeletonJoint.RIGHT_HAND,
+		SkeletonJoint.LEFT_HIP, SkeletonJoint.LEFT_KNEE, SkeletonJoint.LEFT_FOOT,
+		SkeletonJoint.RIGHT_HIP, SkeletonJoint.RIGHT_KNEE, SkeletonJoint.RIGHT_FOOT
+	};
+	private static final int HEAD = 0, NECK = 1,
+		L_SHOULDER = 2, L_ELBOW = 3, L_HAND = 4,
+		R_SHOULDER = 5, R_ELBOW = 6, R_HAND = 7,
+		L_HIP = 8, L_KNEE = 9, L_FOOT = 10,
+		R_HIP = 11, R_KNEE = 12, R_FOOT = 13;
+
+	// limbs drawn as lines; no torso, so it looks like a stick figure
+	private static final int[][] LIMBS = {
+		{ NECK, L_SHOULDER }, { L_SHOULDER, L_ELBOW }, { L_ELBOW, L_HAND },
+		{ NECK, R_SHOULDER }, { R_SHOULDER, R_ELBOW }, { R_ELBOW, R_HAND },
+		{ L_HIP, L_SHOULDER }, { R_HIP, R_SHOULDER }, { L_HIP, R_HIP },
+		{ L_HIP, L_KNEE }, { L_KNEE, L_FOOT },
+		{ R_HIP, R_KNEE }, { R_KNEE, R_FOOT }
+	};
+
+	// what the sensor thread knew about every user after one update
+	static class Frame {
+		long seq = 0;
+		int users = 0;
+		final int[] ids = new int[MAX_USERS];
+		final int[] status = new int[MAX_USERS];
+		final int[] comX = new int[MAX_USERS];
+		final int[] comY = new int[MAX_USERS];
+
+		// projective joint positions; valid is false for joints with no
+		// position or zero confidence
+		final float[][] x = new float[MAX_USERS][JOINTS.length];
+		final float[][] y = new float[MAX_USERS][JOINTS.length];
+		final boolean[][] valid = new boolean[MAX_USERS][JOINTS.length];
+	}
+
+	// the head is drawn as short lines around an ellipse, since Java2D
+	// allocates when it strokes a wide oval or draws under a rotation
+	private static final int HEAD_SEGMENTS = 24;
+	private static final double[] COS = new double[HEAD_SEGMENTS + 1];
+	private static final double[] SIN = new double[HEAD_SEGMENTS + 1];
+	static {
+		for(int i=0; i<=HEAD_SEGMENTS; i++) {
+			COS[i] = Math.cos(2 * Math.PI * i / HEAD_SEGMENTS);
+			SIN[i] = Math.sin(2 * Math.PI * i / HEAD_SEGMENTS);
+		}
+	}
+
+	private final Color[] limbColors;
+	private final BasicStroke limbStroke = new BasicStroke(8);
+	private final BasicStroke thinStroke = new BasicStroke(1);
+
+	// labels by user ID, made the first time each is needed
+	private final String poseName;
+	private String[] calibratingLabels = new String[0];
+	private String[] lookingLabels = new String[0];
+
+	private Frame back = new Frame();     // being filled by the sensor thread
+	private Frame front = new Frame();    // being drawn
+	private AtomicReference<Frame> latest = new AtomicReference<Frame>(new Frame());
+	private long seq = 0;
+
+
+	public SkeletonOverlay(Color[] userColors, String poseName) {
+		this.poseName = poseName;
+
+		// the 'opposite' of each user's colour, so limbs stand out
+		// against the coloured body
+		limbColors = new Color[userColors.length];
+		for(int i=0; i<userColors.length; i++) {
+			Color c = userColors[i];
+			limbColors[i] = new Color(255 - c.getRed(), 255 - c.getGreen(), 255 - c.getBlue());
+		}
+	}
+
+
+	// ------------------ sensor thread ------------------
+
+	// the frame to fill in; cleared of users
+	public Frame begin() {
+		back.users = 0;
+		return back;
+	}
+
+	// adds a user to the frame being filled; returns its index, or -1 if
+	// the frame is full
+	public int addUser(int userID, int status, float comX, float comY) {
+		if(back.users == MAX_USERS) {
+			return -1;
+		}
+
+		int u = back.users++;
+		back.ids[u] = userID;
+		back.status[u] = status;
+		back.comX[u] = (int) comX;
+		back.comY[u] = (int) comY;
+		Arrays.fill(back.valid[u], false);
+		label(userID, status);   // made here, so painting never has to
+		return u;
+	}
+
+	public void setJoint(int user, int joint, float x, float y) {
+		back.x[user][joint] = x;
+		back.y[user][joint] = y;
+		back.valid[user][joint] = true;
+	}
+
+	// makes the filled frame the newest one
+	public void publish() {
+		back.seq = ++seq;
+		back = latest.getAndSet(back);
+	}
+
+
+	// ------------------ painting ------------------
+
+	public void draw(Graphics2D g2d) {
+		Frame newest = latest.get();
+		if(newest.seq > front.seq) {
+			front = latest.getAndSet(front);   // may be newer still; never older
+		}
+
+		// thin lines and no heads when frames are running late
+		boolean simple = QualityGovernor.simpleSkeletons();
+		g2d.setStroke(simple ? thinStroke : limbStroke);
+		for(int u=0; u<front.users; u++) {
+			int userID = front.ids[u];
+			g2d.setColor(limbColors[userID % limbColors.length]);
+
+			if(front.status[u] == TRACKING) {
+				drawSkeleton(g2d, u);
+				if(!simple) {
+					drawHead(g2d, u);
+				}
+			}
+
+			String label = label(userID, front.status[u]);
+			if(label.length() > 0) {
+				g2d.drawString(label, front.comX[u], front.comY[u]);
+			}
+		}
+	}
+
+	private void drawSkeleton(Graphics2D g2d, int u) {
+		boolean[] valid = front.valid[u];
+		float[] x = front.x[u], y = front.y[u];
+
+		for(int[] limb : LIMBS) {
+			int a = limb[0], b = limb[1];
+			if(valid[a] && valid[b]) {
+				g2d.drawLine((int) x[a], (int) y[a], (int) x[b], (int) y[b]);
+			}
+		}
+	}
+
+	// an oval in place of the head, tilted along the neck
+	private void drawHead(Graphics2D g2d, int u) {
+		boolean[] valid = front.valid[u];
+		if(!valid[HEAD] || !valid[NECK]) {
+			return;
+		}
+
+		float headX = front.x[u][HEAD], headY = front.y[u][HEAD];
+		float neckX = front.x[u][NECK], neckY = front.y[u][NECK];
+		float dist = (float) Math.sqrt((headX - neckX)*(headX - neckX)
+										+ (headY - neckY)*(headY - neckY));
+
+		double angle = Math.PI - Math.atan2(neckY - headY, headX - neckX);
+		double cosA = Math.cos(angle), sinA = Math.sin(angle);
+		double a = (int) dist / 2,          // half width
+			   b = (int) (dist * .8) / 2;   // half height
+
+		int lastX = 0, lastY = 0;
+		for(int i=0; i<=HEAD_SEGMENTS; i++) {
+			double ex = a * COS[i], ey = b * SIN[i];
+			int px = (int) (headX + ex*cosA - ey*sinA);
+			int py = (int) (headY + ex*sinA + ey*cosA);
+			if(i > 0) {
+				g2d.drawLine(lastX, lastY, px, py);
+			}
+			lastX = px;
+			lastY = py;
+		}
+	}
+
+	// label shown for a user; tracked users have none
+	private String label(int userID, int status) {
+		if(status == TRACKING || userID < 0) {
+			return "";
+		}
+
+		synchronized(this) {
+			if(userID >= calibratingLabels.length) {
+				int size = Math.max(userID + 1, calibratingLabels.length * 2);
+				calibratingLabels = Arrays.copyOf(calibratingLabels, size);
+				lookingLabels = Arrays.copyOf(lookingLabels, size);
+			}
+
+			if(status == CALIBRATING) {
+				if(calibratingLabels[userID] == null) {
+					calibratingLabels[userID] = "Calibrating user " + userID;
+				}
+				return calibratingLabels[userID];
+			} else {
+				if(lookingLabels[userID] == null) {
+					lookingLabels[userID] = "Looking for " + poseName + " pose for user " + userID;
+				}
+				return lookingLabels[userID];
+			}
+		}
+	}
+}
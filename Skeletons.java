@@ -13,6 +13,9 @@
    Each call to draw() draws each user's skeleton, with a rotated HEAD_FNM
    image for their head, and status text at the body's center-of-mass.
 
+   Drawing is done by SkeletonOverlay, from a snapshot that update()
+   fills in on the sensor thread, so painting makes no OpenNI calls.
+
 
    ========== Changes (December 2011) ================
 
@@ -75,6 +78,11 @@ public class Skeletons
   private GestureSequences gestSeqs;
   private SkeletonsGestures skelsGests;
 
+  private SkeletonOverlay overlay;   // what draw() shows
+
+  private volatile int users = 0;     // in the scene at the last update()
+  private volatile int tracked = 0;   // of which had tracked skeletons
+
 
 
   public Skeletons(UserGenerator userGen, DepthGenerator depthGen, GesturesWatcher watcher)
@@ -84,6 +92,7 @@ public class Skeletons
 
     configure();
     userSkels = new HashMap<Integer, HashMap<SkeletonJoint, SkeletonJointPosition>>();
+    overlay = new SkeletonOverlay(USER_COLORS, calibPoseName);
 
     // create the two gesture detectors, and tell them who to notify (NEW)
     gestSeqs = new GestureSequences(watcher);
@@ -97,10 +106,10 @@ public class Skeletons
     BufferedImage im = null;
     try {
       im = ImageIO.read( new File(fnm));   
-      System.out.println("Loaded image from " + fnm); 
+      Log.info("Loaded image from {}", fnm); 
     }
     catch (Exception e) 
-    { System.out.println("Unable to load image from " + fnm);  }   
+    { Log.warn("Unable to load image from {}", fnm);  }   
 
     return im;
   }  // end of loadImage()
@@ -134,7 +143,7 @@ public class Skeletons
          // for when skeleton calibration is completed, and tracking starts
     } 
     catch (Exception e) {
-      System.out.println(e);
+      Log.error("Unable to set up user tracking", e);
       System.exit(1);
     }
   }  // end of configure()
@@ -142,29 +151,103 @@ public class Skeletons
 
   // --------------- updating ----------------------------
 
-  public void update()
-  // update skeleton of each user
+  public void update(FrameTag tag)
+  /* update skeleton of each user from the tagged depth frame, then
+     take a snapshot for drawing */
   {
+    long jointsTime = 0, seqsTime = 0, gestsTime = 0;   // summed over the users
+    int tracking = 0;
+    overlay.begin();
     try {   
       int[] userIDs = userGen.getUsers();   // there may be many users in the scene
+      users = userIDs.length;
       for (int i = 0; i < userIDs.length; ++i) {
         int userID = userIDs[i];
-        if (skelCap.isSkeletonCalibrating(userID))
+        if (skelCap.isSkeletonCalibrating(userID)) {
+          snapshotUser(userID, SkeletonOverlay.CALIBRATING);
           continue;    // test to avoid occassional crashes with isSkeletonTracking()
+        }
         if (skelCap.isSkeletonTracking(userID)) {
+          tracking++;
+          PipelineEvents.SkeletonUpdate event = new PipelineEvents.SkeletonUpdate();
+          event.begin();
+          long t0 = System.nanoTime();
           updateJoints(userID);
+          long t1 = System.nanoTime();
 
           // when a skeleton changes, have the detectors look for gesture start/finish
-          gestSeqs.checkSeqs(userID);    // NEW
-          skelsGests.checkGests(userID);
+          gestSeqs.checkSeqs(userID, tag);    // NEW
+          long t2 = System.nanoTime();
+          skelsGests.checkGests(userID, tag);
+          long t3 = System.nanoTime();
+
+          jointsTime += t1 - t0;
+          seqsTime += t2 - t1;
+          gestsTime += t3 - t2;
+          snapshotUser(userID, SkeletonOverlay.TRACKING);
+
+          event.frame = tag.id;
+          event.user = userID;
+          event.commit();
         }
+        else
+          snapshotUser(userID, SkeletonOverlay.LOOKING);
       }
     }
     catch (StatusException e) 
-    {  System.out.println(e); }
+    {  Log.warn("Unable to update the skeletons", e); }
+    overlay.publish();
+    tracked = tracking;
+
+    PipelineStats.record(PipelineStats.Stage.JOINTS, jointsTime);
+    PipelineStats.record(PipelineStats.Stage.SEQUENCES, seqsTime);
+    PipelineStats.record(PipelineStats.Stage.GESTURES, gestsTime);
   }  // end of update()
 
 
+  public int userCount()
+  // users in the scene at the last update
+  {  return users;  }
+
+  public int trackedCount()
+  // users whose skeletons were tracked at the last update
+  {  return tracked;  }
+
+  public int countUsers()
+  // users in the scene now, without updating anything (for idle frames)
+  {
+    try {
+      return userGen.getUsers().length;
+    }
+    catch (StatusException e) {
+      Log.warn("Unable to count users", e);
+      return 0;
+    }
+  }  // end of countUsers()
+
+
+
+  private void snapshotUser(int userID, int status) throws StatusException
+  // copy the user's status, centre of mass and joints into the overlay
+  {
+    Point3D massCenter = depthGen.convertRealWorldToProjective(
+                                                userGen.getUserCoM(userID));
+    int u = overlay.addUser(userID, status, massCenter.getX(), massCenter.getY());
+    if (u < 0)
+      return;   // more users than the overlay has room for
+
+    HashMap<SkeletonJoint, SkeletonJointPosition> skel = userSkels.get(userID);
+    if ((status != SkeletonOverlay.TRACKING) || (skel == null))
+      return;
+
+    for (int j = 0; j < SkeletonOverlay.JOINTS.length; j++) {
+      SkeletonJointPosition pos = skel.get(SkeletonOverlay.JOINTS[j]);
+      if ((pos != null) && (pos.getConfidence() != 0))   // skip zero-confidence joints
+        overlay.setJoint(u, j, pos.getPosition().getX(), pos.getPosition().getY());
+    }
+  }  // end of snapshotUser()
+
+
 
 
   private void updateJoints(int userID)
@@ -205,13 +288,13 @@ public class Skeletons
     try {
       // report unavailable joints (should not happen)
       if (!skelCap.isJointAvailable(joint) || !skelCap.isJointActive(joint)) {
-        System.out.println(joint + " not available for updates");
+        Log.warn("{} not available for updates", joint);
         return;
       }
 
       SkeletonJointPosition pos = skelCap.getSkeletonJointPosition(userID, joint);
       if (pos == null) {
-        System.out.println("No update for " + joint);
+        Log.warn("No update for {}", joint);
         return;
       }
       
@@ -226,7 +309,7 @@ public class Skeletons
       skel.put(joint, jPos);
     }
     catch (StatusException e) 
-    {  System.out.println(e); }
+    {  Log.warn("Unable to read a joint position", e); }
   }  // end of updateJoint()
 
 
@@ -235,152 +318,8 @@ public class Skeletons
 
 
   public void draw(Graphics2D g2d)
-  // draw skeleton of each user, and user status
-  {
-    g2d.setStroke(new BasicStroke(8));
-
-    try {   
-      int[] userIDs = userGen.getUsers();
-      for (int i = 0; i < userIDs.length; ++i) {
-        setLimbColor(g2d, userIDs[i]);
-        if (skelCap.isSkeletonCalibrating(userIDs[i])) 
-          {}  // test to avoid occassional crashes with isSkeletonTracking()
-        else if (skelCap.isSkeletonTracking(userIDs[i])) {  
-          HashMap<SkeletonJoint, SkeletonJointPosition> skel = 
-                                              userSkels.get(userIDs[i]);
-          drawSkeleton(g2d, skel);
-          drawHead(g2d, skel);
-        }
-        drawUserStatus(g2d, userIDs[i]);
-      }
-    }
-    catch (StatusException e) 
-    {  System.out.println(e); }
-  }  // end of draw()
-
-
-
-  private void setLimbColor(Graphics2D g2d, int userID)
-  /* use the 'opposite' of the user ID color for the limbs, so they
-     stand out against the colored body */
-  {
-    Color c = USER_COLORS[userID % USER_COLORS.length];
-    Color oppColor = new Color(255 - c.getRed(), 255 - c.getGreen(), 255 - c.getBlue());
-    g2d.setColor(oppColor);
-  }  // end of setLimbColor()
-
-
-  private void drawSkeleton(Graphics2D g2d, 
-                    HashMap<SkeletonJoint, SkeletonJointPosition> skel) 
-  // draw skeleton as lines (limbs) between its joints;
-  // hardwired to avoid non-implemented joints
-  //
-  // WYLIE: Removed torso from drawing, looks like a stick figure now
-  {
-    //drawLine(g2d, skel, SkeletonJoint.HEAD, SkeletonJoint.NECK);
-
-    drawLine(g2d, skel, SkeletonJoint.NECK, SkeletonJoint.LEFT_SHOULDER);
-    drawLine(g2d, skel, SkeletonJoint.LEFT_SHOULDER, SkeletonJoint.LEFT_ELBOW);
-    drawLine(g2d, skel, SkeletonJoint.LEFT_ELBOW, SkeletonJoint.LEFT_HAND);
-
-    drawLine(g2d, skel, SkeletonJoint.NECK, SkeletonJoint.RIGHT_SHOULDER);
-    drawLine(g2d, skel, SkeletonJoint.RIGHT_SHOULDER, SkeletonJoint.RIGHT_ELBOW);
-    drawLine(g2d, skel, SkeletonJoint.RIGHT_ELBOW, SkeletonJoint.RIGHT_HAND);
-
-    drawLine(g2d, skel, SkeletonJoint.LEFT_HIP, SkeletonJoint.LEFT_SHOULDER);
-    drawLine(g2d, skel, SkeletonJoint.RIGHT_HIP, SkeletonJoint.RIGHT_SHOULDER);
-    drawLine(g2d, skel, SkeletonJoint.LEFT_HIP, SkeletonJoint.RIGHT_HIP);
-
-    drawLine(g2d, skel, SkeletonJoint.LEFT_HIP, SkeletonJoint.LEFT_KNEE);
-    drawLine(g2d, skel, SkeletonJoint.LEFT_KNEE, SkeletonJoint.LEFT_FOOT);
-
-    drawLine(g2d, skel, SkeletonJoint.RIGHT_HIP, SkeletonJoint.RIGHT_KNEE);
-    drawLine(g2d, skel, SkeletonJoint.RIGHT_KNEE, SkeletonJoint.RIGHT_FOOT);
-  }  // end of drawSkeleton()
-
-
-
-  private void drawLine(Graphics2D g2d, 
-             HashMap<SkeletonJoint, SkeletonJointPosition> skel, 
-                              SkeletonJoint j1, SkeletonJoint j2)
-  // draw a line (limb) between the two joints (if they have positions)
-  {
-    Point3D p1 = getJointPos(skel, j1);
-    Point3D p2 = getJointPos(skel, j2);
-    if ((p1 != null) && (p2 != null))
-      g2d.drawLine((int) p1.getX(), (int) p1.getY(), 
-                           (int) p2.getX(), (int) p2.getY());
-  }  // end of drawLine()
-
-
-
-  private Point3D getJointPos(HashMap<SkeletonJoint, SkeletonJointPosition> skel, 
-                                                SkeletonJoint j)
-  // get the (x, y, z) coordinate for the joint (or return null)
-  {
-    SkeletonJointPosition pos = skel.get(j);
-    if (pos == null)
-      return null;
-
-    if (pos.getConfidence() == 0)
-      return null;   // don't draw a line to a joint with a zero-confidence pos
-
-    return pos.getPosition();
-  }  // end of getJointPos()
-
-
-  // WYLIE: copied from SkeletonsGestures.java
-  private float distApart(Point3D p1, Point3D p2) {
-  	// the Euclidian distance between the two points
-    float dist = (float) Math.sqrt( 
-             (p1.getX() - p2.getX())*(p1.getX() - p2.getX()) +
-             (p1.getY() - p2.getY())*(p1.getY() - p2.getY()) +
-             (p1.getZ() - p2.getZ())*(p1.getZ() - p2.getZ()) );
-    return dist;
-  }
-
-  // WYLIE: modified to draw oval in place of user's head
-  private void drawHead(Graphics2D g2d, 
-                    HashMap<SkeletonJoint, SkeletonJointPosition> skel) { 
-    Point3D headPt = getJointPos(skel, SkeletonJoint.HEAD);
-    Point3D neckPt = getJointPos(skel, SkeletonJoint.NECK);
-
-    if ( headPt == null || neckPt == null)
-      return;
-    
-	float headX = headPt.getX(),
-		  headY = headPt.getY(),
-		  dist = distApart(headPt, neckPt); // used for scaling
-	
-	// calculate rotation angle
-    double angle = Math.PI - Math.atan2(neckPt.getY() - headY,
-                                        headX - neckPt.getX());
-    
-	int height = (int) ( dist * .8 ),
-		width  = (int) dist;
-
-    g2d.rotate( angle, headX, headY);
-    g2d.drawOval((int)headX - width/2, (int)headY - height/2, width, height);
-    g2d.rotate( -angle, headX, headY); 
-  }
-
-
-
-  private void drawUserStatus(Graphics2D g2d, int userID) throws StatusException
-  // draw user ID and status on the skeleton at its center of mass (CoM)
-  {
-    Point3D massCenter = depthGen.convertRealWorldToProjective(
-                                                userGen.getUserCoM(userID));
-    String label = null;
-    if (skelCap.isSkeletonTracking(userID))     // tracking
-      label = ""; // WYLIE: label is ugly
-    else if (skelCap.isSkeletonCalibrating(userID))  // calibrating
-      label = new String("Calibrating user " + userID);
-    else    // pose detection
-      label = new String("Looking for " + calibPoseName + " pose for user " + userID);
-
-    g2d.drawString(label, (int) massCenter.getX(), (int) massCenter.getY());
-  }  // end of drawUserStatus()
+  // draw skeleton of each user, and user status, from the latest snapshot
+  {  overlay.draw(g2d);  }
 
 
 
@@ -399,7 +338,8 @@ public class Skeletons
   {
     public void update(IObservable<UserEventArgs> observable, UserEventArgs args)
     {
-      System.out.println("Detected new user " + args.getId());
+      Log.info("Detected new user {}", args.getId());
+      IdleMode.userFound();   // back to full rate from this frame
       try {
       		// WYLIE
       		// 
@@ -413,7 +353,7 @@ public class Skeletons
 			}
       }
       catch (StatusException e)
-      { e.printStackTrace(); }
+      { Log.warn("Unable to start calibrating a new user", e); }
     }
   }  // end of NewUserObserver inner class
 
@@ -424,9 +364,10 @@ public class Skeletons
     public void update(IObservable<UserEventArgs> observable, UserEventArgs args)
     { 
       int userID = args.getId();
-      System.out.println("Lost track of user " + userID);
+      Log.info("Lost track of user {}", userID);
 
       // remove user from the gesture detectors (NEW)
+      skelsGests.userLost(userID);   // stop any walking first
       userSkels.remove(userID);    
       gestSeqs.removeUser(userID);
     }
@@ -440,14 +381,14 @@ public class Skeletons
                                                      PoseDetectionEventArgs args)
     {
       int userID = args.getUser();
-      System.out.println(args.getPose() + " pose detected for user " + userID);
+      Log.info("{} pose detected for user {}", args.getPose(), userID);
       try {
         // finished pose detection; switch to skeleton calibration
         poseDetectionCap.stopPoseDetection(userID);
         skelCap.requestSkeletonCalibration(userID, true);
       }
       catch (StatusException e)
-      {  e.printStackTrace(); }
+      {  Log.warn("Unable to calibrate after a pose", e); }
     }
   }  // end of PoseDetectedObserver inner class
 
@@ -459,12 +400,11 @@ public class Skeletons
                                                     CalibrationProgressEventArgs args)
     {
       int userID = args.getUser();
-      System.out.println("Calibration status: " + args.getStatus() + 
-                                                    " for user " + userID);
+      Log.info("Calibration status: {} for user {}", args.getStatus(), userID);
       try {
         if (args.getStatus() == CalibrationProgressStatus.OK) {
           // calibration succeeeded; move to skeleton tracking
-          System.out.println("Starting tracking user " + userID);
+          Log.info("Starting tracking user {}", userID);
           skelCap.startTracking(userID);
 
           // add user to the gesture detectors (NEW)
@@ -489,7 +429,7 @@ public class Skeletons
         }
       }
       catch (StatusException e)
-      {  e.printStackTrace(); }
+      {  Log.warn("Unable to go on calibrating", e); }
     }
   }  // end of CalibrationCompleteObserver inner class
 
@@ -99,6 +99,8 @@ public class SkeletonsGestures
   private boolean isLeftHandIn = false;
   private boolean isLeftHandDown = false;
 
+  private FrameTag tag;   // the depth frame being checked, passed to the watcher
+
 
 
   public SkeletonsGestures(GesturesWatcher aw,
@@ -112,10 +114,11 @@ public class SkeletonsGestures
 
 
 
-  public void checkGests(int userID)
-  /* decide which gestures have just started or just finished, and
-     notify the watcher. */
+  public void checkGests(int userID, FrameTag tag)
+  /* decide which gestures have just started or just finished in
+     this frame, and notify the watcher. */
   {
+    this.tag = tag;
     HashMap<SkeletonJoint, SkeletonJointPosition> skel = userSkels.get(userID);
     if (skel == null)
       return;
@@ -150,6 +153,21 @@ public class SkeletonsGestures
   }
 
 
+  public void userLost(int userID)
+  /* the user has gone, so any turn they were making has ended; report
+     it, or the game would keep walking them */
+  {
+    if (isTurnLeft) {
+      notifyWatcher(userID, GestureName.TURN_LEFT, false);  // stopped
+      isTurnLeft = false;
+    }
+    if (isTurnRight) {
+      notifyWatcher(userID, GestureName.TURN_RIGHT, false);  // stopped
+      isTurnRight = false;
+    }
+  }  // end of userLost()
+
+
 
   private void calcSkelLengths(HashMap<SkeletonJoint, SkeletonJointPosition> skel)
   /* calculate lengths between certain joint pairs for this skeleton;
@@ -203,13 +221,13 @@ public class SkeletonsGestures
     // lower arm length is precomputed, but may be a default value    
     if(armLength < lowerArmLength) {
     	if (!isRightArmBent) {
-    		watcher.pose(userID, GestureName.RH_BENT, true);   // started
+    		notifyWatcher(userID, GestureName.RH_BENT, true);   // started
 	        gestSeqs.addUserGest(userID, GestureName.RH_BENT);  // add to gesture sequence
     		isRightArmBent = true;
     	}
     } else {
     	if (isRightArmBent) {
-	        watcher.pose(userID, GestureName.RH_BENT, false);  // stopped
+	        notifyWatcher(userID, GestureName.RH_BENT, false);  // stopped
 	        isRightArmBent = false;
 	    }
 	}
@@ -227,13 +245,13 @@ public class SkeletonsGestures
     // lower arm length is precomputed, but may be a default value
     if (dist < lowerArmLength) {
       if (!isLeftArmBent) {
-        watcher.pose(userID, GestureName.LH_BENT, true);
+        notifyWatcher(userID, GestureName.LH_BENT, true);
 		gestSeqs.addUserGest(userID, GestureName.LH_BENT);  // add to gesture sequence
         isLeftArmBent = true;
       }
     } else {
       if (isLeftArmBent) {
-        watcher.pose(userID, GestureName.LH_BENT, false);
+        notifyWatcher(userID, GestureName.LH_BENT, false);
         isLeftArmBent = false;
       }
     }
@@ -260,13 +278,13 @@ public class SkeletonsGestures
     // use lower arm length as minimum separation threshold
     if (d1 < neckLength && d2 < neckLength && dist > lowerArmLength) {
       if (!isRightArmStraight) {
-        watcher.pose(userID, GestureName.RH_STRAIGHT, true);
+        notifyWatcher(userID, GestureName.RH_STRAIGHT, true);
 		gestSeqs.addUserGest(userID, GestureName.RH_STRAIGHT);  // add to gesture sequence
         isRightArmStraight = true;
       }
     } else {
       if (isRightArmStraight) {
-        watcher.pose(userID, GestureName.RH_STRAIGHT, false);
+        notifyWatcher(userID, GestureName.RH_STRAIGHT, false);
         isRightArmStraight = false;
       }
     }
@@ -289,13 +307,13 @@ public class SkeletonsGestures
     // use lower arm length as minimum separation threshold
     if (d1 < neckLength && d2 < neckLength) {
       if (!isLeftArmStraight) {
-        watcher.pose(userID, GestureName.LH_STRAIGHT, true);
+        notifyWatcher(userID, GestureName.LH_STRAIGHT, true);
 		gestSeqs.addUserGest(userID, GestureName.LH_STRAIGHT);  // add to gesture sequence
         isLeftArmStraight = true;
       }
     } else {
       if (isLeftArmStraight) {
-        watcher.pose(userID, GestureName.LH_STRAIGHT, false);
+        notifyWatcher(userID, GestureName.LH_STRAIGHT, false);
         isLeftArmStraight = false;
       }
     }
@@ -318,13 +336,13 @@ public class SkeletonsGestures
 
     if (zDiff > lowerArmLength) {    // right hip is forward
       if (!isTurnLeft) {
-        watcher.pose(userID, GestureName.TURN_LEFT, true);  // started
+        notifyWatcher(userID, GestureName.TURN_LEFT, true);  // started
         isTurnLeft = true;
       }
     }
     else {   // not forward
       if (isTurnLeft) {
-        watcher.pose(userID, GestureName.TURN_LEFT, false);  // stopped
+        notifyWatcher(userID, GestureName.TURN_LEFT, false);  // stopped
         isTurnLeft = false;
       }
     }
@@ -343,13 +361,13 @@ public class SkeletonsGestures
 
     if (zDiff > lowerArmLength) {    // left hip is forward
       if (!isTurnRight) {
-        watcher.pose(userID, GestureName.TURN_RIGHT, true);  // started
+        notifyWatcher(userID, GestureName.TURN_RIGHT, true);  // started
         isTurnRight = true;
       }
     }
     else {   // not forward
       if (isTurnRight) {
-        watcher.pose(userID, GestureName.TURN_RIGHT, false);  // stopped
+        notifyWatcher(userID, GestureName.TURN_RIGHT, false);  // stopped
         isTurnRight = false;
       }
     }
@@ -373,14 +391,14 @@ public class SkeletonsGestures
 
     if (rightHandPt.getY() <= headPt.getY()) {    // above
       if (!isRightHandUp) {
-        watcher.pose(userID, GestureName.RH_UP, true);  // started
+        notifyWatcher(userID, GestureName.RH_UP, true);  // started
         gestSeqs.addUserGest(userID, GestureName.RH_UP);  // add to gesture sequence
         isRightHandUp = true;
       }
     }
     else {   // not above
       if (isRightHandUp) {
-        watcher.pose(userID, GestureName.RH_UP, false);  // stopped
+        notifyWatcher(userID, GestureName.RH_UP, false);  // stopped
         isRightHandUp = false;
       }
     }
@@ -400,14 +418,14 @@ public class SkeletonsGestures
     if (zDiff < -1*(armLength*0.95f)) {    // is forward
       // System.out.println("  armLength: " + armLength);
       if (!isRightHandFwd) {
-        watcher.pose(userID, GestureName.RH_FWD, true);  // started
+        notifyWatcher(userID, GestureName.RH_FWD, true);  // started
         gestSeqs.addUserGest(userID, GestureName.RH_FWD);  // add to gesture sequence
         isRightHandFwd = true;
       }
     }
     else {   // not forward
       if (isRightHandFwd) {
-        watcher.pose(userID, GestureName.RH_FWD, false);  // stopped
+        notifyWatcher(userID, GestureName.RH_FWD, false);  // stopped
         isRightHandFwd = false;
       }
     }
@@ -425,14 +443,14 @@ public class SkeletonsGestures
 
     if (xDiff > (lowerArmLength*0.6f)) {    // out to the right
       if (!isRightHandOut) {
-        watcher.pose(userID, GestureName.RH_OUT, true);  // started
+        notifyWatcher(userID, GestureName.RH_OUT, true);  // started
         gestSeqs.addUserGest(userID, GestureName.RH_OUT);  // add to gesture sequence
         isRightHandOut = true;
       }
     }
     else {   // not out to the right
       if (isRightHandOut) {
-        watcher.pose(userID, GestureName.RH_OUT, false);  // stopped
+        notifyWatcher(userID, GestureName.RH_OUT, false);  // stopped
         isRightHandOut = false;
       }
     }
@@ -450,14 +468,14 @@ public class SkeletonsGestures
 
     if (xDiff < -1*(lowerArmLength*0.6f)) {   // inside
       if (!isRightHandIn) {
-        watcher.pose(userID, GestureName.RH_IN, true);  // started
+        notifyWatcher(userID, GestureName.RH_IN, true);  // started
         gestSeqs.addUserGest(userID, GestureName.RH_IN);  // add to gesture sequence
         isRightHandIn = true;
       }
     }
     else {   // not inside
       if (isRightHandIn) {
-        watcher.pose(userID, GestureName.RH_IN, false);  // stopped
+        notifyWatcher(userID, GestureName.RH_IN, false);  // stopped
         isRightHandIn = false;
       }
     }
@@ -473,14 +491,14 @@ public class SkeletonsGestures
 
     if (rightHandPt.getY() >= hipPt.getY()) {    // below
       if (!isRightHandDown) {
-        watcher.pose(userID, GestureName.RH_DOWN, true);  // started
+        notifyWatcher(userID, GestureName.RH_DOWN, true);  // started
         gestSeqs.addUserGest(userID, GestureName.RH_DOWN);  // add to gesture sequence
         isRightHandDown = true;
       }
     }
     else {   // not below
       if (isRightHandDown) {
-        watcher.pose(userID, GestureName.RH_DOWN, false);  // stopped
+        notifyWatcher(userID, GestureName.RH_DOWN, false);  // stopped
         isRightHandDown = false;
       }
     }
@@ -502,14 +520,14 @@ public class SkeletonsGestures
 
     if (leftHandPt.getY() <= headPt.getY()) {    // above
       if (!isLeftHandUp) {
-        watcher.pose(userID, GestureName.LH_UP, true);  // started
+        notifyWatcher(userID, GestureName.LH_UP, true);  // started
         gestSeqs.addUserGest(userID, GestureName.LH_UP);  // WYLIE
         isLeftHandUp = true;
       }
     }
     else {   // not above
       if (isLeftHandUp) {
-        watcher.pose(userID, GestureName.LH_UP, false);  // stopped
+        notifyWatcher(userID, GestureName.LH_UP, false);  // stopped
         isLeftHandUp = false;
       }
     }
@@ -532,14 +550,14 @@ public class SkeletonsGestures
     if (zDiff < -1*(armLength*0.95f)) {    // is forward
       // System.out.println("  armLength: " + armLength);
       if (!isLeftHandFwd) {
-        watcher.pose(userID, GestureName.LH_FWD, true);  // started
+        notifyWatcher(userID, GestureName.LH_FWD, true);  // started
         gestSeqs.addUserGest(userID, GestureName.LH_FWD);  // add to gesture sequence
         isLeftHandFwd = true;
       }
     }
     else {   // not forward
       if (isLeftHandFwd) {
-        watcher.pose(userID, GestureName.LH_FWD, false);  // stopped
+        notifyWatcher(userID, GestureName.LH_FWD, false);  // stopped
         isLeftHandFwd = false;
       }
     }
@@ -557,14 +575,14 @@ public class SkeletonsGestures
 
     if (xDiff > (lowerArmLength*0.6f)) {    // out to the left
       if (!isLeftHandOut) {
-        watcher.pose(userID, GestureName.LH_OUT, true);  // started
+        notifyWatcher(userID, GestureName.LH_OUT, true);  // started
         gestSeqs.addUserGest(userID, GestureName.LH_OUT);  // add to gesture sequence
         isLeftHandOut = true;
       }
     }
     else {   // not out to the left
       if (isLeftHandOut) {
-        watcher.pose(userID, GestureName.LH_OUT, false);  // stopped
+        notifyWatcher(userID, GestureName.LH_OUT, false);  // stopped
         isLeftHandOut = false;
       }
     }
@@ -582,14 +600,14 @@ public class SkeletonsGestures
 
     if (xDiff < -1*(lowerArmLength*0.6f)) {   // inside
       if (!isLeftHandIn) {
-        watcher.pose(userID, GestureName.LH_IN, true);  // started
+        notifyWatcher(userID, GestureName.LH_IN, true);  // started
         gestSeqs.addUserGest(userID, GestureName.LH_IN);  // add to gesture sequence
         isLeftHandIn = true;
       }
     }
     else {   // not inside
       if (isLeftHandIn) {
-        watcher.pose(userID, GestureName.LH_IN, false);  // stopped
+        notifyWatcher(userID, GestureName.LH_IN, false);  // stopped
         isLeftHandIn = false;
       }
     }
@@ -605,14 +623,14 @@ public class SkeletonsGestures
 
     if (leftHandPt.getY() >= hipPt.getY()) {    // below
       if (!isLeftHandDown) {
-        watcher.pose(userID, GestureName.LH_DOWN, true);  // started
+        notifyWatcher(userID, GestureName.LH_DOWN, true);  // started
         gestSeqs.addUserGest(userID, GestureName.LH_DOWN);  // add to gesture sequence
         isLeftHandDown = true;
       }
     }
     else {   // not below
       if (isLeftHandDown) {
-        watcher.pose(userID, GestureName.LH_DOWN, false);  // stopped
+        notifyWatcher(userID, GestureName.LH_DOWN, false);  // stopped
         isLeftHandDown = false;
       }
     }
@@ -639,6 +657,25 @@ public class SkeletonsGestures
 
 
 
+  private void notifyWatcher(int userID, GestureName gest, boolean isActivated)
+  /* tell the watcher a gesture started or stopped in the frame being
+     checked, recording it (and the watcher's handling) as a flight
+     recorder event */
+  {
+    PipelineEvents.Gesture event = new PipelineEvents.Gesture();
+    event.begin();
+    watcher.pose(userID, gest, isActivated, tag);
+    if (event.shouldCommit()) {
+      event.frame = tag.id;
+      event.user = userID;
+      event.gesture = gest.name();
+      event.started = isActivated;
+      event.commit();
+    }
+  }  // end of notifyWatcher()
+
+
+
 }  // end of SkeletonsGestures class
 
 
@@ -0,0 +1,142 @@
+/** TileSprites
+ *
+ *  Every tile drawn once into an image, so Level can draw a board by
+ *  copying from it instead of filling and stroking shapes per tile.
+ *
+ *  One atlas is kept per tile size and shared by every level using that
+ *  size. Atlases are compatible with the screen, so copying from them
+ *  needs no conversion; antialiasing is only used while drawing them.
+ **/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.*;
+
+public class TileSprites {
+	// position of each sprite in the atlas, in tiles
+	private static final int DOOR   = 0;
+	private static final int GROUND = 1;
+	private static final int BLOCK  = 2;
+	private static final int PLAYER = 3;   // two tiles tall
+	private static final int COUNT  = 4;
+
+	private static HashMap<Integer, TileSprites> cache = new HashMap<Integer, TileSprites>();
+	private static long hits = 0;
+	private static long misses = 0;
+
+	private final int size;
+	private final BufferedImage atlas;
+
+
+	// the sprites for a tile size, drawn the first time it is asked for
+	public static synchronized TileSprites forSize(int tileSize) {
+		TileSprites sprites = cache.get(tileSize);
+		if(sprites == null) {
+			misses++;
+			sprites = new TileSprites(tileSize);
+			cache.put(tileSize, sprites);
+		} else {
+			hits++;
+		}
+		return sprites;
+	}
+
+	public static synchronized String stats() {
+		long bytes = 0;
+		for(TileSprites sprites : cache.values()) {
+			bytes += (long) sprites.atlas.getWidth() * sprites.atlas.getHeight() * 4;
+		}
+		return cache.size() + " atlases (" + bytes/1024 + " KB), "
+				+ hits + " hits, " + misses + " misses";
+	}
+
+
+	private TileSprites(int size) {
+		this.size = size;
+		atlas = createImage(size * COUNT, size * 2, Transparency.TRANSLUCENT);
+
+		Graphics2D g2d = atlas.createGraphics();
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+								RenderingHints.VALUE_ANTIALIAS_ON);
+		drawDoor(g2d, DOOR * size);
+		drawGround(g2d, GROUND * size);
+		drawBlock(g2d, BLOCK * size);
+		drawPlayer(g2d, PLAYER * size);
+		g2d.dispose();
+	}
+
+	// an image the screen can draw without converting, when there is one
+	static BufferedImage createImage(int width, int height, int transparency) {
+		if(GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+					? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+				.getDefaultScreenDevice().getDefaultConfiguration();
+		return gc.createCompatibleImage(width, height, transparency);
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+
+	// draws a board tile with its top left corner at x, y; air and the
+	// start tile have nothing to draw
+	public void drawTile(Graphics2D g2d, int tile, int x, int y) {
+		switch(tile) {
+			case Board.DOOR:   blit(g2d, DOOR, x, y, 1);   break;
+			case Board.GROUND: blit(g2d, GROUND, x, y, 1); break;
+			case Board.BLOCK:  blit(g2d, BLOCK, x, y, 1);  break;
+			default:           break;
+		}
+	}
+
+	// the player is two tiles tall, x, y being the top of the head
+	public void drawPlayer(Graphics2D g2d, int x, int y) {
+		blit(g2d, PLAYER, x, y, 2);
+	}
+
+	private void blit(Graphics2D g2d, int sprite, int x, int y, int tall) {
+		int sx = sprite * size;
+		g2d.drawImage(atlas, x, y, x + size, y + size*tall,
+						sx, 0, sx + size, size*tall, null);
+	}
+
+
+	// the same shapes Level used to draw for each tile, clipped to the tile
+	private void drawDoor(Graphics2D g2d, int x) {
+		g2d.setPaint(Color.RED);
+		g2d.fillRect(x, 0, size, size);
+	}
+
+	private void drawGround(Graphics2D g2d, int x) {
+		Graphics2D g = (Graphics2D) g2d.create(x, 0, size, size);
+		g.setPaint(Color.WHITE);
+		g.fillRect(0, 0, size, size);
+
+		g.setPaint(Color.BLACK);
+		g.setStroke(new BasicStroke(2));
+		g.drawRect(0, 0, size, size);
+		g.dispose();
+	}
+
+	private void drawBlock(Graphics2D g2d, int x) {
+		Graphics2D g = (Graphics2D) g2d.create(x, 0, size, size);
+		g.setPaint(Color.GRAY);
+		g.fillRoundRect(0, 0, size, size, 20, 20);
+
+		g.setPaint(Color.BLACK);
+		g.setStroke(new BasicStroke(3));
+		g.drawRoundRect(0, 0, size, size, 20, 20);
+
+		g.setStroke(new BasicStroke(2));
+		g.drawRoundRect(10, 10, size-20, size-20, 10, 10);
+		g.dispose();
+	}
+
+	private void drawPlayer(Graphics2D g2d, int x) {
+		g2d.setPaint(Color.BLUE);
+		g2d.fillRect(x, 0, size, size*2);
+	}
+}
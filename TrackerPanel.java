@@ -13,48 +13,52 @@
 
    The skeletons are maintained, updated, and drawn by the Skeletons class.
 
+   Each frame is pipelined: the sensor thread, at top priority, updates
+   the skeletons and looks for gestures first, then hands a copy of the
+   depth maps to DepthStage, whose own thread colours the preview. So
+   gestures reach the game without waiting for the preview, and if the
+   preview falls behind its oldest frames are dropped instead.
+
+   The depth image is triple-buffered: the stage fills one buffer, the
+   newest finished one waits in a slot, and whoever draws (the EDT, or
+   ActiveRenderer's thread) swaps it out, so neither side ever sees a
+   half-written image or waits for the other.
 */
 
 import java.awt.*;
 import javax.swing.*;
 import java.awt.image.*;
 import java.awt.geom.*;
-import java.awt.color.*;
-import java.text.DecimalFormat;
 import java.io.*;
 import javax.imageio.*;
 import java.util.*;
 
 import org.OpenNI.*;
 
-import java.nio.ShortBuffer;
-
 
 
 
 public class TrackerPanel extends JPanel implements Runnable
 {
-  private static final int MAX_DEPTH_SIZE = 10000;  
-
   private Color USER_COLORS[] = {
     Color.RED, Color.BLUE, Color.CYAN, Color.GREEN,
     Color.MAGENTA, Color.PINK, Color.YELLOW, Color.WHITE};
           /* colors used to draw each user's depth image, except the last
              (white) which is for the background */ 
 
-  private byte[] imgbytes;
+  private DepthStage preview;   // colours the depth image on its own thread
   private int imWidth, imHeight;
-  private float histogram[];        // for the depth values
-  private int maxDepth = 0;         // largest depth value
+
+  private DepthFrame front;       // the depth image being drawn
+  private long frameSeq = 0;      // sensor frames so far; the id of each one's FrameTag
+  private long idleFrames = 0;    // sensor frames seen while idle
 
 
   private volatile boolean isRunning;
   
-  // used for the average ms processing information
-  private int imageCount = 0;
-  private long totalTime = 0;
-  private DecimalFormat df;
+  private volatile boolean loaded = false;   // true once a frame has been shown
   private Font msgFont;
+  private Font statsFont;
 
   // OpenNI
   private Context context;
@@ -74,23 +78,23 @@ public class TrackerPanel extends JPanel implements Runnable
   {
     setBackground(Color.BLACK);
 
-    df = new DecimalFormat("0.#");  // 1 dp
     msgFont = new Font("SansSerif", Font.BOLD, 18);
+    statsFont = new Font("Monospaced", Font.PLAIN, 12);
 	
 	this.game = game; // WYLIE
 
     configOpenNI();
 
-    histogram = new float[MAX_DEPTH_SIZE];
-
     imWidth = depthMD.getFullXRes();
     imHeight = depthMD.getFullYRes();
-    System.out.println("Image dimensions (" + imWidth + ", " +
-                                              imHeight + ")");
-    // create empty image bytes array of correct size and type
-    imgbytes = new byte[imWidth * imHeight * 3];
-
-    new Thread(this).start();   // start updating the panel
+    Log.info("Image dimensions ({}, {})", imWidth, imHeight);
+    // the stage makes the other two image buffers
+    preview = new DepthStage(new DepthProcessor(USER_COLORS), imWidth, imHeight, this);
+    front = new DepthFrame(imWidth, imHeight);
+
+    Thread sensor = new Thread(this, "sensor");   // start updating the panel
+    sensor.setPriority(Thread.MAX_PRIORITY);      // gestures come first
+    sensor.start();
   } // end of TrackerPanel()
 
 
@@ -125,10 +129,10 @@ public class TrackerPanel extends JPanel implements Runnable
 
 
       context.startGeneratingAll(); 
-      System.out.println("Started context generating..."); 
+      Log.info("Started context generating..."); 
     } 
     catch (Exception e) {
-      System.out.println(e);
+      Log.error("Unable to start the sensor", e);
       System.exit(1);
     }
   }  // end of configOpenNI()
@@ -149,20 +153,41 @@ public class TrackerPanel extends JPanel implements Runnable
   */
   {
     isRunning = true;
+    PipelineStats.start();
     while (isRunning) {
+      long time = System.nanoTime();
       try {
         context.waitAnyUpdateAll();
       }
       catch(StatusException e)
-      {  System.out.println(e); 
+      {  Log.error("Lost the sensor", e); 
          System.exit(1);
       }
-	    long startTime = System.currentTimeMillis();
-      updateUserDepths();
-      skels.update();
-      imageCount++;
-      totalTime += (System.currentTimeMillis() - startTime);
-      repaint();
+      time = PipelineStats.lap(PipelineStats.Stage.WAIT, time);
+      if (IdleMode.isIdle()) {
+        idleFrame(time);
+        continue;
+      }
+      FrameTag tag = new FrameTag(++frameSeq, time);   // carried with its gestures
+
+      // skeletons and gestures first, then the preview, which may be cut
+      // back (see QualityGovernor); the skeletons and gestures never are
+      PipelineEvents.DepthFrame event = new PipelineEvents.DepthFrame();
+      event.begin();
+      skels.update(tag);
+      boolean shown = QualityGovernor.preview(tag.id);
+      int step = QualityGovernor.previewStep();
+      if (shown)
+        submitDepths(tag.id, step);
+      event.frame = tag.id;
+      event.pixels = shown ? (imWidth/step) * (imHeight/step) : 0;
+      event.users = skels.userCount();
+      event.tracked = skels.trackedCount();
+      event.commit();
+      MetricsServer.frame(event.users, event.tracked);
+      IdleMode.frame(event.users, time);
+      QualityGovernor.frame(System.nanoTime() - time);
+      loaded = true;    // DepthStage repaints once the preview is coloured
     }
     // close down
     try {
@@ -175,76 +200,31 @@ public class TrackerPanel extends JPanel implements Runnable
 
 
 
-  private void updateUserDepths()
-  /* build a histogram of 8-bit depth values, and convert it to
-     depth image bytes where each user is coloured differently */
+  private void submitDepths(long id, int step)
+  /* hand a copy of the newest depth map and labeled user map to
+     DepthStage, to be coloured looking at every step'th pixel
+     each way */
   {
-    ShortBuffer depthBuf = depthMD.getData().createShortBuffer();
-    calcHistogram(depthBuf);
-    depthBuf.rewind();
-
-   // use user IDs to colour the depth map
-    ShortBuffer usersBuf = sceneMD.getData().createShortBuffer();
-      /* usersBuf is a labeled depth map, where each pixel holds an
-         user ID (e.g. 1, 2, 3), or 0 to denote that the pixel is
-         part of the background.  */
-
-    while (depthBuf.remaining() > 0) {
-      int pos = depthBuf.position();
-      short depthVal = depthBuf.get();
-      short userID = usersBuf.get();
-
-      imgbytes[3*pos] = 0;     // default colour is black when there's no depth data
-      imgbytes[3*pos + 1] = 0;
-      imgbytes[3*pos + 2] = 0;
-
-      if (depthVal != 0 && userID != 0) { // there is depth data for a user here
-        // convert userID to index into USER_COLORS[]
-        int colorIdx = userID % (USER_COLORS.length-1);   // skip last color
-
-        // convert histogram value (0.0-1.0f) to a RGB color
-        float histValue = histogram[depthVal];
-        imgbytes[3*pos] = (byte) (histValue * USER_COLORS[colorIdx].getRed());
-        imgbytes[3*pos + 1] = (byte) (histValue * USER_COLORS[colorIdx].getGreen());
-        imgbytes[3*pos + 2] = (byte) (histValue * USER_COLORS[colorIdx].getBlue());
-      }
-    }
-  }  // end of updateUserDepths()
+    preview.submit(depthMD.getData().createShortBuffer(),
+                   sceneMD.getData().createShortBuffer(), id, step);
+  }  // end of submitDepths()
 
 
 
-  private void calcHistogram(ShortBuffer depthBuf)
+  private void idleFrame(long time)
+  /* nobody is in view: only count users, and colour a coarse depth
+     image every few frames. A new user ends this before the frame they
+     arrive in is processed (see Skeletons.NewUserObserver) */
   {
-    // reset histogram
-    for (int i = 0; i <= maxDepth; i++)
-      histogram[i] = 0;
-
-    // record number of different depths in histogram[]
-    int numPoints = 0;
-    maxDepth = 0;
-    while (depthBuf.remaining() > 0) {
-      short depthVal = depthBuf.get();
-      if (depthVal > maxDepth)
-        maxDepth = depthVal;
-      if ((depthVal != 0)  && (depthVal < MAX_DEPTH_SIZE)){      // skip histogram[0]
-        histogram[depthVal]++;
-        numPoints++;
-      }
+    int users = skels.countUsers();
+    MetricsServer.frame(users, 0);
+    frameSeq++;
+    if (++idleFrames % IdleMode.EVERY == 0) {
+      submitDepths(frameSeq, IdleMode.STEP);
+      loaded = true;
     }
-    // System.out.println("No. of numPoints: " + numPoints);
-    // System.out.println("Maximum depth: " + maxDepth);
-
-    // convert into a cummulative depth count (skipping histogram[0])
-    for (int i = 1; i <= maxDepth; i++)
-      histogram[i] += histogram[i-1];
-
-    /* convert cummulative depth into the range 0.0 - 1.0f
-       which will later be used to modify a color from USER_COLORS[] */
-    if (numPoints > 0) {
-      for (int i = 1; i <= maxDepth; i++)    // skipping histogram[0]
-        histogram[i] = 1.0f - (histogram[i] / (float) numPoints);
-    }
-  }  // end of calcHistogram()
+    IdleMode.frame(users, time);
+  }  // end of idleFrame()
 
 
 
@@ -254,55 +234,60 @@ public class TrackerPanel extends JPanel implements Runnable
   // Draw the depth image with coloured users, skeletons, and statistics info
   { 
     super.paintComponent(g);
-    Graphics2D g2d = (Graphics2D) g;
+    render((Graphics2D) g);
+  } // end of paintComponent()
 
+
+
+  public void render(Graphics2D g2d)
+  /* draw everything; called by paintComponent(), or by ActiveRenderer
+     when the panel itself isn't on screen */
+  {
+    PipelineEvents.Paint event = new PipelineEvents.Paint();
+    event.begin();
+    long time = System.nanoTime();
+    if (!QualityGovernor.antialias())
+      g2d.setRenderingHint(RenderingHints.KEY_RENDERING,
+                           RenderingHints.VALUE_RENDER_SPEED);
     drawUserDepths(g2d);
-    g2d.setFont(msgFont);    // for user status and stats
+    g2d.setFont(msgFont);    // for user status
     skels.draw(g2d);
-    writeStats(g2d);
+    writeStats(g2d, imHeight);
     //game.update(g2d); // WYLIE: draw game GUI
-  } // end of paintComponent()
+    QualityGovernor.painted(PipelineStats.lap(PipelineStats.Stage.DEPTH_PAINT, time) - time);
+
+    if (event.shouldCommit()) {
+      event.panel = "depth";
+      event.frame = front.seq;
+      event.width = imWidth;
+      event.height = imHeight;
+      event.commit();
+    }
+  }  // end of render()
 
 
 
   private void drawUserDepths(Graphics2D g2d)
-  /* Create BufferedImage using the depth image bytes
-     and a color model, then draw it */
+  // draw the newest finished depth image
   {
-    // define an 8-bit RGB channel color model
-    ColorModel colorModel = new ComponentColorModel(
-                     ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[] { 8, 8, 8},
-                     false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
-
-    // fill the raster with the depth image bytes
-    DataBufferByte dataBuffer = new DataBufferByte(imgbytes, imWidth*imHeight*3);
-
-    WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, imWidth,
-                                 imHeight, imWidth*3, 3, new int[] { 0, 1, 2}, null);
-
-    // combine color model and raster to create a BufferedImage
-    BufferedImage image = new BufferedImage(colorModel, raster, false, null);
-
-    g2d.drawImage(image, 0, 0, null);
+    front = preview.newest(front);
+    g2d.drawImage(front.image, 0, 0, null);
   }  // end of drawUserDepths()
 
 
 
-  private void writeStats(Graphics2D g2d)
-  /* write statistics in bottom-left corner, or
-     "Loading" at start time */
+  private void writeStats(Graphics2D g2d, int panelHeight)
+  /* write each pipeline stage's timings for the last second in the
+     bottom-left corner, or "Loading" at start time */
   {
 	g2d.setColor(Color.WHITE);
-    int panelHeight = getHeight();
-    if (imageCount > 0) {
-      double avgGrabTime = (double) totalTime / imageCount;
-	    g2d.drawString(df.format(avgGrabTime) + " ms", 
-                   10, panelHeight-10);  // bottom left
+    if (loaded) {
+      g2d.setFont(statsFont);
+      PipelineStats.drawOverlay(g2d, 10, panelHeight-10);  // bottom left
     }
     else  // no image yet
 	    g2d.drawString("Loading...", 10, panelHeight-10);
   }  // end of writeStats()
 
-
 } // end of TrackerPanel class
 
@@ -0,0 +1,195 @@
+/** AllocationCheck
+ *
+ *  Runs the whole frame loop on synthetic input, as TrackerPanel does for
+ *  each sensor frame, and fails if it allocates or retains more than it
+ *  should. Run with BENCH_MAIN=AllocationCheck sh bench/bench.sh.
+ *
+ *  usage: java AllocationCheck [frames]
+ *
+ *  Each frame updates a tracked user's skeleton (who turns, raises a hand
+ *  and holds out an arm every so often, so gestures reach the game),
+ *  hands the depth maps to a DepthStage to be coloured, and paints the
+ *  game, the depth image and the skeleton. After
+ *  a warm-up, the frames are run twice over:
+ *
+ *   - bytes allocated per frame by this thread and the stage's, from
+ *     ThreadMXBean, must stay under -Dalloc.maxBytesPerFrame (2048);
+ *   - heap in use after a full GC must not grow from the end of the first
+ *     run to the end of the second by more than -Dalloc.maxGrowth bytes
+ *     (64 KB, for the collector's own noise).
+ *
+ *  Exits with status 1 if either is exceeded.
+ **/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.lang.management.*;
+
+import org.OpenNI.*;
+
+public class AllocationCheck {
+	private static final int WIDTH = 640, HEIGHT = 480;
+	private static final int USER = 1;
+	private static final int POSE_FRAMES = 20;   // frames between pose changes
+
+	private static final Color[] USER_COLORS = {
+		Color.RED, Color.BLUE, Color.CYAN, Color.GREEN,
+		Color.MAGENTA, Color.PINK, Color.YELLOW, Color.WHITE };
+
+	private DepthMetaData depthMD;
+	private SceneMetaData sceneMD;
+	private SkeletonCapability skelCap;
+	private DepthStage stage = new DepthStage(new DepthProcessor(USER_COLORS), WIDTH, HEIGHT, new Canvas());
+	private DepthFrame frame = new DepthFrame(WIDTH, HEIGHT);
+	private Skeletons skels;
+	private GameRunner game;
+
+	private Graphics2D gameGraphics, depthGraphics;
+	private long frameID = 0;
+
+
+	public static void main(String[] args) throws Exception {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		long budget = Long.getLong("alloc.maxBytesPerFrame", 2048);
+		long maxGrowth = Long.getLong("alloc.maxGrowth", 64 * 1024);
+
+		// what the game prints still costs what it does, but goes nowhere
+		System.setOut(new java.io.PrintStream(java.io.OutputStream.nullOutputStream()));
+		AllocationCheck check = new AllocationCheck();
+
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] ids = { Thread.currentThread().getId(), threadID("depth-preview") };
+
+		check.run(frames);   // warm up
+		long before = usedAfterGC();
+
+		long startBytes = allocated(threads, ids);
+		long start = System.nanoTime();
+		check.run(frames);
+		long nanos = System.nanoTime() - start;
+		double perFrame = (double) (allocated(threads, ids) - startBytes) / frames;
+		long middle = usedAfterGC();
+
+		check.run(frames);
+		long after = usedAfterGC();
+
+		System.err.println(String.format("frames:     %d, %.1f us each", frames, nanos / 1000.0 / frames));
+		System.err.println(String.format("allocated:  %.1f bytes/frame (budget %d)", perFrame, budget));
+		System.err.println(String.format("retained:   %+d bytes over %d frames (warm-up ended at %d)",
+											after - middle, frames, before));
+
+		boolean ok = true;
+		if(perFrame > budget) {
+			System.err.println("FAIL: over the allocation budget");
+			ok = false;
+		}
+		if(after - middle > maxGrowth) {
+			System.err.println("FAIL: the heap keeps growing");
+			ok = false;
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	private static long threadID(String name) {
+		for(Thread t : Thread.getAllStackTraces().keySet()) {
+			if(t.getName().equals(name)) {
+				return t.getId();
+			}
+		}
+		throw new IllegalStateException("no thread " + name);
+	}
+
+	private static long allocated(com.sun.management.ThreadMXBean threads, long[] ids) {
+		long sum = 0;
+		for(long id : ids) {
+			sum += threads.getThreadAllocatedBytes(id);
+		}
+		return sum;
+	}
+
+	private static long usedAfterGC() throws InterruptedException {
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		for(int i=0; i<3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return memory.getHeapMemoryUsage().getUsed();
+	}
+
+
+	private AllocationCheck() throws Exception {
+		Context context = new Context();
+		DepthGenerator depthGen = DepthGenerator.create(context);
+		depthMD = depthGen.getMetaData();
+		UserGenerator userGen = UserGenerator.create(context);
+		sceneMD = userGen.getUserPixels(0);
+		SyntheticDepth.fill(depthMD.getData().getBuffer(), sceneMD.getData().getBuffer(), 0);
+
+		// playing the game as usual, except that nothing is recorded
+		System.clearProperty("blockdude.record");
+		game = new GameRunner();
+		skels = new Skeletons(userGen, depthGen, game);
+
+		userGen.setUsers(USER);
+		skelCap = userGen.getSkeletonCapability();
+		skelCap.calibrate(USER);
+		pose(false);
+
+		gameGraphics = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+		depthGraphics = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+		depthGraphics.setFont(new Font("SansSerif", Font.BOLD, 18));
+	}
+
+	// one TrackerPanel.run() loop per frame, then a paint of each panel
+	private void run(int frames) {
+		for(int i=0; i<frames; i++) {
+			if(frameID % POSE_FRAMES == 0) {
+				pose((frameID / POSE_FRAMES) % 2 == 1);
+			}
+
+			FrameTag tag = new FrameTag(++frameID, System.nanoTime());
+			skels.update(tag);
+			stage.submit(depthMD.getData().createShortBuffer(),
+							sceneMD.getData().createShortBuffer(), tag.id, 1);
+			MetricsServer.frame(skels.userCount(), skels.trackedCount());
+
+			game.render(gameGraphics);
+			frame = stage.newest(frame);
+			depthGraphics.drawImage(frame.image, 0, 0, null);
+			skels.draw(depthGraphics);
+		}
+	}
+
+	// standing at rest, or turned with one hand up and the other arm out
+	private void pose(boolean active) {
+		joint(SkeletonJoint.HEAD,           0, -300, 2000);
+		joint(SkeletonJoint.NECK,           0, -200, 2000);
+		joint(SkeletonJoint.TORSO,          0,    0, 2000);
+		joint(SkeletonJoint.RIGHT_SHOULDER, -100, -200, 2000);
+		joint(SkeletonJoint.LEFT_SHOULDER,   100, -200, 2000);
+		joint(SkeletonJoint.LEFT_HIP,         80,  150, 2000);
+		joint(SkeletonJoint.LEFT_KNEE,        80,  300, 2000);
+		joint(SkeletonJoint.LEFT_FOOT,        80,  450, 2000);
+		joint(SkeletonJoint.RIGHT_KNEE,      -80,  300, 2000);
+		joint(SkeletonJoint.RIGHT_FOOT,      -80,  450, 2000);
+
+		if(active) {
+			joint(SkeletonJoint.RIGHT_ELBOW, -110, -300, 2000);
+			joint(SkeletonJoint.RIGHT_HAND,  -110, -400, 2000);
+			joint(SkeletonJoint.LEFT_ELBOW,   250, -200, 2000);
+			joint(SkeletonJoint.LEFT_HAND,    400, -200, 2000);
+			joint(SkeletonJoint.RIGHT_HIP,    -80,  150, 1700);
+		} else {
+			joint(SkeletonJoint.RIGHT_ELBOW, -110,  -50, 2000);
+			joint(SkeletonJoint.RIGHT_HAND,  -110,  100, 2000);
+			joint(SkeletonJoint.LEFT_ELBOW,   110,  -50, 2000);
+			joint(SkeletonJoint.LEFT_HAND,    110,  100, 2000);
+			joint(SkeletonJoint.RIGHT_HIP,    -80,  150, 2000);
+		}
+	}
+
+	private void joint(SkeletonJoint joint, float x, float y, float z) {
+		skelCap.setJoint(USER, joint, new SkeletonJointPosition(new Point3D(x, y, z), 1));
+	}
+}
@@ -0,0 +1,100 @@
+/** BatchBoardsCheck
+ *
+ *  Checks that BatchBoards steps every board in a packed batch exactly as
+ *  Board.step steps a board on its own. Run with
+ *  BENCH_MAIN=BatchBoardsCheck sh bench/bench.sh.
+ *
+ *  usage: java BatchBoardsCheck [level file] [boards] [rounds]
+ *
+ *  Steps a batch of copies of a level (levels/2.lvl, 10000 of them, so
+ *  the fork/join pool splits the work) with random actions, once on the
+ *  calling thread and once on a pool, and alongside them a Board for each
+ *  copy. After every round each board in the batch must match its Board,
+ *  tile for tile and in its state, and report the same reward and end;
+ *  a board that finishes is compared with a fresh copy of the level.
+ *  The same is then done with a tiny level that random play often wins.
+ *
+ *  Exits with status 1 at the first difference.
+ **/
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BatchBoardsCheck {
+	private static final int MAX_STEPS = 200;
+
+	public static void main(String[] args) throws IOException {
+		File file = new File(args.length > 0 ? args[0] : "levels/2.lvl");
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+		// a block to carry over a step up to the door
+		Board tiny = Board.fromRows(new int[][] {
+			{ 0, 0, 0, 0, 0, 1 },
+			{ 0, 0, 0, 0, 0, 8 },
+			{ 8, 0, 7, 3, 0, 8 },
+			{ 8, 8, 8, 8, 8, 8 } });
+
+		ForkJoinPool pool = new ForkJoinPool();
+		boolean ok = true;
+		for(Board template : new Board[] { LevelParser.parse(file), tiny }) {
+			ok = ok && check(template, count, rounds, null) && check(template, count, rounds, pool);
+		}
+		pool.shutdown();
+
+		if(!ok) {
+			System.exit(1);
+		}
+		System.err.println(count + " boards matched Board.step over " + rounds + " rounds");
+	}
+
+	private static boolean check(Board template, int count, int rounds, ForkJoinPool pool) {
+		BatchBoards batch = new BatchBoards(template, count, MAX_STEPS);
+		batch.setPool(pool);
+
+		Board[] boards = new Board[count];
+		int[] steps = new int[count];
+		for(int i=0; i<count; i++) {
+			boards[i] = new Board(template);
+		}
+
+		Random random = new Random(count);
+		int[] actions = new int[count];
+		float[] rewards = new float[count];
+		boolean[] done = new boolean[count];
+		long wins = 0;
+
+		for(int round=0; round<rounds; round++) {
+			for(int i=0; i<count; i++) {
+				actions[i] = random.nextInt(6);
+			}
+			batch.step(actions, rewards, done);
+
+			for(int i=0; i<count; i++) {
+				Board board = boards[i];
+				board.step(actions[i]);
+				boolean won = board.isWon();
+				boolean over = won || ++steps[i] >= MAX_STEPS;
+				float reward = won ? BatchBoards.WIN_REWARD : BatchBoards.STEP_REWARD;
+				wins += won ? 1 : 0;
+				if(over) {
+					board = boards[i] = new Board(template);
+					steps[i] = 0;
+				}
+
+				Board packed = batch.board(i);
+				if(done[i] != over || rewards[i] != reward
+						|| !Arrays.equals(packed.cells(), board.cells())
+						|| !Arrays.equals(packed.state, board.state)) {
+					System.err.println("FAIL: board " + i + " differs after round " + round
+										+ (pool == null ? "" : " on a pool"));
+					return false;
+				}
+			}
+		}
+		System.err.println(template.getColumns() + "-column level" + (pool == null ? "" : " on a pool")
+							+ ": " + wins + " wins");
+		return true;
+	}
+}
@@ -0,0 +1,86 @@
+/** HintBoardCheck
+ *
+ *  Checks that the hint engine's copy of a board follows the game on a
+ *  compiled level wider than one decoded chunk. Run with
+ *  BENCH_MAIN=HintBoardCheck sh bench/bench.sh.
+ *
+ *  Writes and compiles a 200-column level with a block at column 100, then
+ *  copies the board at the start as HintEngine does, walks to the block
+ *  and lifts it. The copy, brought up to date with MoveJournal.apply, must
+ *  match the game's board tile for tile and in what the solver sees.
+ *
+ *  Exits with status 1 if it doesn't.
+ **/
+
+import java.io.*;
+import java.util.*;
+
+public class HintBoardCheck {
+	private static final int COLUMNS = 200, ROWS = 10;
+	private static final int BLOCK_COL = 100;
+
+	public static void main(String[] args) throws IOException {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "hintcheck" + System.nanoTime());
+		dir.mkdirs();
+		File source = new File(dir, "wide.lvl");
+		writeLevel(source);
+		CompiledLevel.compile(source, CompiledLevel.compiledFile(source));
+
+		Level level = new Level(source, 640, 480);
+		MoveJournal.Position at = level.getPosition();
+		Board copy = new Board(level.getBoard());
+
+		while(level.getBoard().getPlayer() < BLOCK_COL-1) {
+			level.moveRight();
+		}
+		level.liftBlockRight();
+
+		MoveJournal.Position pos = level.getPosition();
+		MoveJournal.apply(at, pos, copy);
+
+		Board live = level.getBoard();
+		boolean ok = live.isCarrying()
+				&& copy.isCarrying()
+				&& copy.getPlayer() == live.getPlayer()
+				&& copy.tile(ROWS-2, BLOCK_COL) == Board.AIR
+				&& Arrays.equals(copy.cells(), live.cells())
+				&& LevelSolver.encode(copy).equals(LevelSolver.encode(live));
+
+		CompiledLevel.compiledFile(source).delete();
+		source.delete();
+		dir.delete();
+
+		if(!ok) {
+			System.err.println("FAIL: the hint board doesn't match the game after lifting at column " + BLOCK_COL);
+			System.exit(1);
+		}
+		System.err.println("hint board matches the game after lifting at column " + BLOCK_COL);
+	}
+
+	// flat ground, the player at the left, one block at BLOCK_COL and the
+	// door near the right
+	private static void writeLevel(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			for(int i=0; i<ROWS; i++) {
+				StringBuilder row = new StringBuilder();
+				for(int j=0; j<COLUMNS; j++) {
+					int tile = Board.AIR;
+					if(i == ROWS-1 || j == 0 || j == COLUMNS-1) {
+						tile = Board.GROUND;
+					} else if(i == ROWS-2 && j == 2) {
+						tile = Board.START;
+					} else if(i == ROWS-2 && j == BLOCK_COL) {
+						tile = Board.BLOCK;
+					} else if(i == ROWS-2 && j == COLUMNS-3) {
+						tile = Board.DOOR;
+					}
+					row.append(tile).append(' ');
+				}
+				out.println(row);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/** LevelParserBench
+ *
+ *  Compares LevelParser with the line-splitting parser Level used before.
+ *
+ *  usage: BENCH_MAIN=LevelParserBench sh bench/bench.sh [columns] [rows]
+ *
+ *  Writes a random level of the given size (10000 x 200 by default) to a
+ *  temporary file, then reports the best time of several runs of each.
+ **/
+
+import java.io.*;
+import java.util.*;
+
+public class LevelParserBench {
+	private static final int RUNS = 10;
+
+	public static void main(String[] args) throws IOException {
+		int columns = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int rows    = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		File file = File.createTempFile("bench", ".lvl");
+		file.deleteOnExit();
+		writeLevel(file, columns, rows);
+		System.out.println(columns + " x " + rows + " level, " + file.length() + " bytes");
+
+		long oldBest = Long.MAX_VALUE, newBest = Long.MAX_VALUE;
+		for(int run=0; run<RUNS; run++) {
+			long start = System.nanoTime();
+			int[][] tiles = splitParse(file);
+			oldBest = Math.min(oldBest, System.nanoTime() - start);
+
+			start = System.nanoTime();
+			Board board = LevelParser.parse(file);
+			newBest = Math.min(newBest, System.nanoTime() - start);
+
+			if(board.getRows() != tiles.length || board.getColumns() != tiles[0].length) {
+				throw new IllegalStateException("parsers disagree on the level size");
+			}
+		}
+
+		System.out.println("split parser:  " + (oldBest / 1000000.0) + " ms");
+		System.out.println("LevelParser:   " + (newBest / 1000000.0) + " ms");
+	}
+
+	// ground along the bottom, random blocks and walls above, start on the left
+	private static void writeLevel(File file, int columns, int rows) throws IOException {
+		Random random = new Random(42);
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			for(int i=0; i<rows; i++) {
+				for(int j=0; j<columns; j++) {
+					int tile;
+					if(i == rows-1) {
+						tile = 8;
+					} else if(i == rows-2 && j == 1) {
+						tile = 7;
+					} else if(i == rows-2 && j == columns-2) {
+						tile = 1;
+					} else {
+						int r = random.nextInt(10);
+						tile = r == 0 ? 3 : (r == 1 ? 8 : 0);
+					}
+					out.write(Integer.toString(tile));
+					out.write(j < columns-1 ? ' ' : '\n');
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// the parser Level used to have: count lines, reopen, split each line
+	private static int[][] splitParse(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		int lines = 0;
+		while(reader.readLine() != null) lines++;
+		reader.close();
+
+		int[][] tiles = new int[lines][];
+		reader = new BufferedReader(new FileReader(file));
+		for(int i=0; i<lines; i++) {
+			String[] numstrs = reader.readLine().split("\\s+");
+			int[] nums = new int[numstrs.length];
+			for(int j=0; j<nums.length; j++) {
+				nums[j] = Integer.parseInt(numstrs[j]);
+			}
+			tiles[i] = nums;
+		}
+		reader.close();
+
+		return tiles;
+	}
+}
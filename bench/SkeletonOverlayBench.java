@@ -0,0 +1,77 @@
+/** SkeletonOverlayBench
+ *
+ *  Checks that drawing the skeleton overlay makes no garbage once warmed
+ *  up, and reports how long it takes.
+ *
+ *  usage: BENCH_MAIN=SkeletonOverlayBench sh bench/bench.sh [frames]
+ *
+ *  Fills the overlay with four users (three tracked, one calibrating),
+ *  draws it repeatedly into a 640 x 480 image, and reports the time and
+ *  bytes allocated per frame on the drawing thread. Exits with status 1
+ *  if drawing allocates more than -Dbench.maxBytesPerFrame (default 0).
+ **/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.lang.management.*;
+
+public class SkeletonOverlayBench {
+	private static final Color[] USER_COLORS = {
+		Color.RED, Color.BLUE, Color.CYAN, Color.GREEN,
+		Color.MAGENTA, Color.PINK, Color.YELLOW, Color.WHITE };
+
+	public static void main(String[] args) {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		long budget = Long.getLong("bench.maxBytesPerFrame", 0);
+
+		SkeletonOverlay overlay = new SkeletonOverlay(USER_COLORS, "Psi");
+		fill(overlay, 0);
+
+		BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g2d = image.createGraphics();
+		g2d.setFont(new Font("SansSerif", Font.BOLD, 18));
+
+		com.sun.management.ThreadMXBean threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		// warm up, then measure
+		long bytes = 0, nanos = 0;
+		for(int run=0; run<2; run++) {
+			long startBytes = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			for(int i=0; i<frames; i++) {
+				overlay.draw(g2d);
+			}
+			nanos = System.nanoTime() - start;
+			bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+		}
+		g2d.dispose();
+
+		double perFrame = (double) bytes / frames;
+		System.out.println("draw:       " + (nanos / frames / 1000.0) + " us/frame");
+		System.out.println("allocated:  " + perFrame + " bytes/frame");
+
+		if(perFrame > budget) {
+			System.out.println("FAIL: over the budget of " + budget + " bytes/frame");
+			System.exit(1);
+		}
+	}
+
+	// a snapshot as Skeletons.update() would publish it
+	private static void fill(SkeletonOverlay overlay, int shift) {
+		overlay.begin();
+		for(int user=1; user<=4; user++) {
+			int status = user == 4 ? SkeletonOverlay.CALIBRATING : SkeletonOverlay.TRACKING;
+			float cx = 120 * user + shift, cy = 240;
+			int u = overlay.addUser(user, status, cx, cy);
+
+			if(status == SkeletonOverlay.TRACKING) {
+				for(int j=0; j<SkeletonOverlay.JOINTS.length; j++) {
+					overlay.setJoint(u, j, cx + (j % 3 - 1) * 30, cy - 150 + j * 20);
+				}
+			}
+		}
+		overlay.publish();
+	}
+}
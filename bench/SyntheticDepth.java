@@ -0,0 +1,38 @@
+/** SyntheticDepth
+ *
+ *  Made-up depth and user maps standing in for the sensor's, for
+ *  AllocationCheck and the JMH benchmarks (which build this file too).
+ **/
+
+import java.nio.*;
+import java.util.*;
+
+public class SyntheticDepth {
+	public static final int WIDTH = 640, HEIGHT = 480;
+
+	// a floor sloping away, a wall behind, and two users standing at
+	// different depths, shifted a little from frame to frame
+	public static void fill(ShortBuffer depth, ShortBuffer users, int frame) {
+		Random random = new Random(frame);
+		for(int y=0; y<HEIGHT; y++) {
+			for(int x=0; x<WIDTH; x++) {
+				int d = y > HEIGHT * 2/3 ? 1000 + (HEIGHT - y) * 20 : 4000;
+				int user = 0;
+				for(int u=1; u<=2; u++) {
+					int cx = 200 * u + frame * 2, top = 80 + u * 20;
+					if(Math.abs(x - cx) < 60 && y > top && y < HEIGHT - 40) {
+						d = 1500 + u * 700 + Math.abs(x - cx) * 3;
+						user = u;
+					}
+				}
+				if(random.nextInt(50) == 0) {
+					d = 0;   // sensor shadow
+				}
+				depth.put((short) d);
+				users.put((short) user);
+			}
+		}
+		depth.flip();
+		users.flip();
+	}
+}
@@ -0,0 +1,145 @@
+/** TileSpritesBench
+ *
+ *  Compares Level.draw, which copies its static layer and tiles from
+ *  pre-rendered images, with the antialiased shape drawing Level used
+ *  before.
+ *
+ *  usage: BENCH_MAIN=TileSpritesBench sh bench/bench.sh [frames]
+ *
+ *  Draws a 640 x 480 screen with a tile in every cell (ground, blocks and
+ *  a door) into a screen-compatible image, and reports the average paint
+ *  time per frame of each.
+ **/
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+
+public class TileSpritesBench {
+	private static final int WIDTH = 640;
+	private static final int HEIGHT = 480;
+
+	public static void main(String[] args) throws IOException {
+		int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		File file = File.createTempFile("bench", ".lvl");
+		file.deleteOnExit();
+		CompiledLevel.compiledFile(file).deleteOnExit();
+		writeLevel(file, WIDTH / Level.TILE_SIZE, HEIGHT / Level.TILE_SIZE);
+		Level level = new Level(file, WIDTH, HEIGHT);
+
+		BufferedImage screen = createScreen();
+		Graphics2D g2d = screen.createGraphics();
+
+		// warm up both, then time them
+		for(int run=0; run<2; run++) {
+			long start = System.nanoTime();
+			for(int i=0; i<frames; i++) {
+				drawShapes(g2d, level);
+			}
+			long shapes = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for(int i=0; i<frames; i++) {
+				level.snapshot();
+				level.draw(g2d);
+			}
+			long sprites = System.nanoTime() - start;
+
+			if(run == 1) {
+				System.out.println("shapes:   " + (shapes / frames / 1000.0) + " us/frame");
+				System.out.println("images:   " + (sprites / frames / 1000.0) + " us/frame");
+			}
+		}
+		g2d.dispose();
+
+		System.out.println("sprite cache: " + TileSprites.stats());
+	}
+
+	private static BufferedImage createScreen() {
+		if(GraphicsEnvironment.isHeadless()) {
+			return new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		}
+		return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+				.getDefaultConfiguration().createCompatibleImage(WIDTH, HEIGHT);
+	}
+
+	// ground along the bottom, a door, and blocks and ground in every
+	// other cell; the start sits on the ground
+	private static void writeLevel(File file, int columns, int rows) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(file));
+		try {
+			for(int i=0; i<rows; i++) {
+				for(int j=0; j<columns; j++) {
+					int tile;
+					if(i == rows-1) {
+						tile = 8;
+					} else if(i == rows-2 && j == 1) {
+						tile = 7;
+					} else if(i == rows-3 && j == 1) {
+						tile = 0;
+					} else if(i == 0 && j == columns-1) {
+						tile = 1;
+					} else {
+						tile = (i + j) % 2 == 0 ? 3 : 8;
+					}
+					out.write(Integer.toString(tile));
+					out.write(j < columns-1 ? ' ' : '\n');
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	// the drawing Level did before TileSprites, with antialiasing on for
+	// the whole panel as GameRunner had it
+	private static void drawShapes(Graphics2D g2d, Level level) {
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+								RenderingHints.VALUE_ANTIALIAS_ON);
+		Board board = level.getBoard();
+		int tileSize = level.tileSize;
+
+		for(int j=0; j<board.getColumns(); j++) {
+			for(int i=0; i<board.getRows(); i++) {
+				int x = j * tileSize, y = i * tileSize;
+
+				switch(board.tile(i, j)) {
+					case Board.DOOR:
+						g2d.setPaint(Color.RED);
+						g2d.fillRect(x, y, tileSize, tileSize);
+						break;
+					case Board.BLOCK:
+						drawBlock(g2d, x, y, tileSize);
+						break;
+					case Board.GROUND:
+						g2d.setPaint(Color.WHITE);
+						g2d.fillRect(x, y, tileSize, tileSize);
+						g2d.setPaint(Color.BLACK);
+						g2d.setStroke(new BasicStroke(2));
+						g2d.drawRect(x, y, tileSize, tileSize);
+						break;
+					default:
+						break;
+				}
+			}
+		}
+
+		int x = board.getPlayer() * tileSize, y = board.getHeight() * tileSize - tileSize*2;
+		g2d.setPaint(Color.BLUE);
+		g2d.fillRect(x, y, tileSize, tileSize*2);
+
+		g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+								RenderingHints.VALUE_ANTIALIAS_OFF);
+	}
+
+	private static void drawBlock(Graphics2D g2d, int x, int y, int tileSize) {
+		g2d.setPaint(Color.GRAY);
+		g2d.fillRoundRect(x, y, tileSize, tileSize, 20, 20);
+		g2d.setPaint(Color.BLACK);
+		g2d.setStroke(new BasicStroke(3));
+		g2d.drawRoundRect(x, y, tileSize, tileSize, 20, 20);
+		g2d.setStroke(new BasicStroke(2));
+		g2d.drawRoundRect(x+10, y+10, tileSize-20, tileSize-20, 10, 10);
+	}
+}
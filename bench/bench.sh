@@ -0,0 +1,9 @@
+# builds the game against the OpenNI stubs and runs one of the checks in
+# bench/, AllocationCheck unless BENCH_MAIN names another, e.g.
+#   BENCH_MAIN=HintBoardCheck sh bench/bench.sh
+# BENCH_OPTS passes JVM settings. The timed benchmarks are in jmh/.
+cd "$(dirname "$0")/.."
+rm -rf bench/classes
+mkdir bench/classes
+javac -d bench/classes $(find bench/stubs -name '*.java') *.java bench/*.java || exit 1
+java $BENCH_OPTS -Djava.awt.headless=true -cp bench/classes ${BENCH_MAIN:-AllocationCheck} "$@"
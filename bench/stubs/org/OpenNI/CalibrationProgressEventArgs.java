@@ -0,0 +1,14 @@
+package org.OpenNI;
+
+public class CalibrationProgressEventArgs {
+	private int user;
+	private CalibrationProgressStatus status;
+
+	public CalibrationProgressEventArgs(int user, CalibrationProgressStatus status) {
+		this.user = user;
+		this.status = status;
+	}
+
+	public int getUser() { return user; }
+	public CalibrationProgressStatus getStatus() { return status; }
+}
@@ -0,0 +1,5 @@
+package org.OpenNI;
+
+public enum CalibrationProgressStatus {
+	OK, NO_USER, ARM, LEG, HEAD, TORSO, TOP_FOV, SIDE_FOV, POSE, MANUAL_ABORT, MANUAL_RESET, TIMEOUT
+}
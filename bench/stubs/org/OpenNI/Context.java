@@ -0,0 +1,12 @@
+package org.OpenNI;
+
+public class Context {
+	public Context() throws GeneralException {}
+
+	public void addLicense(License license) throws StatusException {}
+	public void setGlobalMirror(boolean mirror) throws StatusException {}
+	public void startGeneratingAll() throws StatusException {}
+	public void stopGeneratingAll() throws StatusException {}
+	public void waitAnyUpdateAll() throws StatusException {}
+	public void release() {}
+}
@@ -0,0 +1,20 @@
+package org.OpenNI;
+
+public class DepthGenerator {
+	private DepthMetaData metaData = new DepthMetaData(640, 480);
+
+	public static DepthGenerator create(Context context) throws GeneralException {
+		return new DepthGenerator();
+	}
+
+	public void setMapOutputMode(MapOutputMode mode) throws StatusException {
+		metaData = new DepthMetaData(mode.getXRes(), mode.getYRes());
+	}
+
+	public DepthMetaData getMetaData() { return metaData; }
+
+	// the stub's projective coordinates are its real-world ones
+	public Point3D convertRealWorldToProjective(Point3D point) throws StatusException {
+		return point;
+	}
+}
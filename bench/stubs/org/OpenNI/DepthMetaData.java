@@ -0,0 +1,16 @@
+package org.OpenNI;
+
+public class DepthMetaData {
+	private int xRes, yRes;
+	private Map data;
+
+	public DepthMetaData(int xRes, int yRes) {
+		this.xRes = xRes;
+		this.yRes = yRes;
+		data = new Map(xRes * yRes);
+	}
+
+	public int getFullXRes() { return xRes; }
+	public int getFullYRes() { return yRes; }
+	public Map getData() { return data; }
+}
@@ -0,0 +1,6 @@
+package org.OpenNI;
+
+public class GeneralException extends Exception {
+	public GeneralException() {}
+	public GeneralException(String message) { super(message); }
+}
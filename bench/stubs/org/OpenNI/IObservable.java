@@ -0,0 +1,5 @@
+package org.OpenNI;
+
+public interface IObservable<Args> {
+	void addObserver(IObserver<Args> observer) throws StatusException;
+}
@@ -0,0 +1,5 @@
+package org.OpenNI;
+
+public class License {
+	public License(String vendor, String key) {}
+}
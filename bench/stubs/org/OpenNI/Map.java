@@ -0,0 +1,15 @@
+package org.OpenNI;
+
+import java.nio.*;
+
+// a map's values, which benchmarks fill in through getBuffer()
+public class Map {
+	private ShortBuffer buffer;
+
+	public Map(int size) {
+		buffer = ByteBuffer.allocateDirect(size * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+	}
+
+	public ShortBuffer createShortBuffer() { return buffer.duplicate(); }
+	public ShortBuffer getBuffer() { return buffer; }
+}
@@ -0,0 +1,15 @@
+package org.OpenNI;
+
+public class MapOutputMode {
+	private int xRes, yRes, fps;
+
+	public MapOutputMode(int xRes, int yRes, int fps) {
+		this.xRes = xRes;
+		this.yRes = yRes;
+		this.fps = fps;
+	}
+
+	public int getXRes() { return xRes; }
+	public int getYRes() { return yRes; }
+	public int getFPS() { return fps; }
+}
@@ -0,0 +1,16 @@
+package org.OpenNI;
+
+// an event source fired by the other stubs when a benchmark asks
+class Observable<Args> implements IObservable<Args> {
+	private java.util.ArrayList<IObserver<Args>> observers = new java.util.ArrayList<IObserver<Args>>();
+
+	public void addObserver(IObserver<Args> observer) throws StatusException {
+		observers.add(observer);
+	}
+
+	void fire(Args args) {
+		for(IObserver<Args> observer : observers) {
+			observer.update(this, args);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package org.OpenNI;
+
+public class Point3D {
+	private float x, y, z;
+
+	public Point3D() {}
+
+	public Point3D(float x, float y, float z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public float getX() { return x; }
+	public float getY() { return y; }
+	public float getZ() { return z; }
+}
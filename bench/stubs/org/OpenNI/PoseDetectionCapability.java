@@ -0,0 +1,10 @@
+package org.OpenNI;
+
+public class PoseDetectionCapability {
+	public void startPoseDetection(String pose, int user) throws StatusException {}
+	public void stopPoseDetection(int user) throws StatusException {}
+
+	public IObservable<PoseDetectionEventArgs> getPoseDetectedEvent() throws StatusException {
+		return new Observable<PoseDetectionEventArgs>();
+	}
+}
@@ -0,0 +1,14 @@
+package org.OpenNI;
+
+public class PoseDetectionEventArgs {
+	private String pose;
+	private int user;
+
+	public PoseDetectionEventArgs(String pose, int user) {
+		this.pose = pose;
+		this.user = user;
+	}
+
+	public String getPose() { return pose; }
+	public int getUser() { return user; }
+}
@@ -0,0 +1,11 @@
+package org.OpenNI;
+
+public class SceneMetaData {
+	private Map data;
+
+	public SceneMetaData(int xRes, int yRes) {
+		data = new Map(xRes * yRes);
+	}
+
+	public Map getData() { return data; }
+}
@@ -0,0 +1,42 @@
+package org.OpenNI;
+
+import java.util.*;
+
+// reports the users and joint positions a benchmark sets with calibrate()
+// and setJoint() as tracked
+public class SkeletonCapability {
+	private HashMap<Integer, EnumMap<SkeletonJoint, SkeletonJointPosition>> skeletons =
+		new HashMap<Integer, EnumMap<SkeletonJoint, SkeletonJointPosition>>();
+	private Observable<CalibrationProgressEventArgs> calibrationComplete =
+		new Observable<CalibrationProgressEventArgs>();
+
+	// starts tracking a user, as if they had just been calibrated
+	public void calibrate(int user) {
+		skeletons.put(user, new EnumMap<SkeletonJoint, SkeletonJointPosition>(SkeletonJoint.class));
+		calibrationComplete.fire(new CalibrationProgressEventArgs(user, CalibrationProgressStatus.OK));
+	}
+
+	public void setJoint(int user, SkeletonJoint joint, SkeletonJointPosition pos) {
+		skeletons.get(user).put(joint, pos);
+	}
+
+	public String getSkeletonCalibrationPose() throws StatusException { return "Psi"; }
+	public boolean needPoseForCalibration() throws StatusException { return true; }
+	public void setSkeletonProfile(SkeletonProfile profile) throws StatusException {}
+	public void requestSkeletonCalibration(int user, boolean force) throws StatusException {}
+	public void startTracking(int user) throws StatusException {}
+
+	public IObservable<CalibrationProgressEventArgs> getCalibrationCompleteEvent() throws StatusException {
+		return calibrationComplete;
+	}
+
+	public boolean isSkeletonCalibrating(int user) throws StatusException { return false; }
+	public boolean isSkeletonTracking(int user) throws StatusException { return skeletons.containsKey(user); }
+	public boolean isJointAvailable(SkeletonJoint joint) throws StatusException { return true; }
+	public boolean isJointActive(SkeletonJoint joint) throws StatusException { return true; }
+
+	public SkeletonJointPosition getSkeletonJointPosition(int user, SkeletonJoint joint) throws StatusException {
+		EnumMap<SkeletonJoint, SkeletonJointPosition> skeleton = skeletons.get(user);
+		return skeleton == null ? null : skeleton.get(joint);
+	}
+}
@@ -0,0 +1,9 @@
+package org.OpenNI;
+
+public enum SkeletonJoint {
+	HEAD, NECK, TORSO, WAIST,
+	LEFT_COLLAR, LEFT_SHOULDER, LEFT_ELBOW, LEFT_WRIST, LEFT_HAND, LEFT_FINGER_TIP,
+	RIGHT_COLLAR, RIGHT_SHOULDER, RIGHT_ELBOW, RIGHT_WRIST, RIGHT_HAND, RIGHT_FINGER_TIP,
+	LEFT_HIP, LEFT_KNEE, LEFT_ANKLE, LEFT_FOOT,
+	RIGHT_HIP, RIGHT_KNEE, RIGHT_ANKLE, RIGHT_FOOT
+}
@@ -0,0 +1,14 @@
+package org.OpenNI;
+
+public class SkeletonJointPosition {
+	private Point3D position;
+	private float confidence;
+
+	public SkeletonJointPosition(Point3D position, float confidence) {
+		this.position = position;
+		this.confidence = confidence;
+	}
+
+	public Point3D getPosition() { return position; }
+	public float getConfidence() { return confidence; }
+}
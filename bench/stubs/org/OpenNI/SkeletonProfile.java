@@ -0,0 +1,5 @@
+package org.OpenNI;
+
+public enum SkeletonProfile {
+	NONE, ALL, UPPER_BODY, LOWER_BODY, HEAD_HANDS
+}
@@ -0,0 +1,6 @@
+package org.OpenNI;
+
+public class StatusException extends GeneralException {
+	public StatusException() {}
+	public StatusException(String message) { super(message); }
+}
@@ -0,0 +1,11 @@
+package org.OpenNI;
+
+public class UserEventArgs {
+	private int id;
+
+	public UserEventArgs(int id) {
+		this.id = id;
+	}
+
+	public int getId() { return id; }
+}
@@ -0,0 +1,34 @@
+package org.OpenNI;
+
+// reports the users a benchmark sets with setUsers(), each centred on
+// the origin; which are tracked is up to getSkeletonCapability()
+public class UserGenerator {
+	private SceneMetaData scene = new SceneMetaData(640, 480);
+	private SkeletonCapability skeletons = new SkeletonCapability();
+	private PoseDetectionCapability poses = new PoseDetectionCapability();
+	private int[] users = new int[0];
+
+	public static UserGenerator create(Context context) throws GeneralException {
+		return new UserGenerator();
+	}
+
+	// sets who getUsers() reports
+	public void setUsers(int... users) {
+		this.users = users.clone();
+	}
+
+	public int[] getUsers() throws StatusException { return users; }
+	public Point3D getUserCoM(int user) throws StatusException { return new Point3D(); }
+	public SceneMetaData getUserPixels(int frame) throws StatusException { return scene; }
+
+	public SkeletonCapability getSkeletonCapability() throws StatusException { return skeletons; }
+	public PoseDetectionCapability getPoseDetectionCapability() throws StatusException { return poses; }
+
+	public IObservable<UserEventArgs> getNewUserEvent() throws StatusException {
+		return new Observable<UserEventArgs>();
+	}
+
+	public IObservable<UserEventArgs> getLostUserEvent() throws StatusException {
+		return new Observable<UserEventArgs>();
+	}
+}
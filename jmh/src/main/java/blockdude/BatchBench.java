@@ -0,0 +1,67 @@
+/** BatchBench
+ *
+ *  Random play over a packed batch of copies of levels/2.lvl, on the
+ *  calling thread and split over a fork/join pool. Scores are board steps
+ *  per second, to set against BatchBoards' target of millions a second.
+ *  Run from the top directory.
+ **/
+
+package blockdude;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BatchBench {
+	private static final int BOARDS = 8192;
+	private static final int MAX_STEPS = 200;
+	private static final int ROUNDS = 16;   // sets of random actions, cycled
+
+	@Param({ "false", "true" })
+	public boolean pooled;
+
+	private BatchBoards batch;
+	private ForkJoinPool pool;
+	private int[][] actions = new int[ROUNDS][BOARDS];
+	private float[] rewards = new float[BOARDS];
+	private boolean[] done = new boolean[BOARDS];
+	private int round;
+
+	@Setup
+	public void setUp() throws IOException {
+		batch = new BatchBoards(LevelParser.parse(new File("levels/2.lvl")), BOARDS, MAX_STEPS);
+		if(pooled) {
+			pool = new ForkJoinPool();
+			batch.setPool(pool);
+		}
+
+		Random random = new Random(1);
+		for(int[] round : actions) {
+			for(int i=0; i<BOARDS; i++) {
+				round[i] = random.nextInt(6);
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if(pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BOARDS)
+	public boolean[] step() {
+		batch.step(actions[round++ % ROUNDS], rewards, done);
+		return done;
+	}
+}
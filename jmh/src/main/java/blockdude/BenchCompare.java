@@ -0,0 +1,65 @@
+/** BenchCompare
+ *
+ *  Compares two sets of JMH results saved as CSV (-rf csv -rff file), to
+ *  catch a slowdown in review.
+ *
+ *  usage: java -cp jmh/target/benchmarks.jar blockdude.BenchCompare
+ *             <before.csv> <after.csv> [tolerance]
+ *
+ *  Prints each benchmark's time after the change as a multiple of its time
+ *  before, and exits with status 1 if any got slower by more than the
+ *  tolerance (0.15). Scores are times per operation, so compare runs from
+ *  the same machine only.
+ **/
+
+package blockdude;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+public class BenchCompare {
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("usage: BenchCompare <before.csv> <after.csv> [tolerance]");
+			System.exit(2);
+		}
+		Map<String, Double> before = read(args[0]);
+		Map<String, Double> after = read(args[1]);
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.15;
+
+		boolean ok = true;
+		for(Map.Entry<String, Double> e : after.entrySet()) {
+			Double was = before.get(e.getKey());
+			if(was == null) {
+				System.out.println(String.format("%-40s    new", e.getKey()));
+				continue;
+			}
+
+			double ratio = e.getValue() / was;
+			boolean slower = ratio > 1 + tolerance;
+			ok &= !slower;
+			System.out.println(String.format("%-40s %6.2fx%s", e.getKey(), ratio, slower ? "  SLOWER" : ""));
+		}
+		System.exit(ok ? 0 : 1);
+	}
+
+	// score by benchmark name and unit, in the order of the file
+	private static Map<String, Double> read(String file) throws IOException {
+		Map<String, Double> scores = new LinkedHashMap<String, Double>();
+		List<String> lines = Files.readAllLines(Paths.get(file));
+		for(String line : lines.subList(1, lines.size())) {
+			String[] fields = line.split(",");
+			if(fields.length < 7) {
+				continue;
+			}
+			String name = unquote(fields[0]).replace("blockdude.", "") + " " + unquote(fields[6]);
+			scores.put(name, Double.parseDouble(fields[4]));
+		}
+		return scores;
+	}
+
+	private static String unquote(String field) {
+		return field.startsWith("\"") ? field.substring(1, field.length() - 1) : field;
+	}
+}
@@ -0,0 +1,101 @@
+/** DepthBench
+ *
+ *  Depth processing and drawing on synthetic 640x480 frames, as
+ *  TrackerPanel does for each frame from the sensor.
+ **/
+
+package blockdude;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.nio.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DepthBench {
+	private static final int WIDTH = SyntheticDepth.WIDTH, HEIGHT = SyntheticDepth.HEIGHT;
+	private static final int FRAMES = 8;   // synthetic depth frames, cycled
+
+	private static final Color[] USER_COLORS = {
+		Color.RED, Color.BLUE, Color.CYAN, Color.GREEN,
+		Color.MAGENTA, Color.PINK, Color.YELLOW, Color.WHITE };
+
+	private ShortBuffer[] depths = new ShortBuffer[FRAMES];
+	private ShortBuffer[] users = new ShortBuffer[FRAMES];
+	private int next;
+
+	private DepthProcessor processor;
+	private DepthFrame frame;
+	private DepthStage stage;
+	private Graphics2D g2d;
+
+	@Setup
+	public void setUp() {
+		for(int f=0; f<FRAMES; f++) {
+			depths[f] = ShortBuffer.allocate(WIDTH * HEIGHT);
+			users[f] = ShortBuffer.allocate(WIDTH * HEIGHT);
+			SyntheticDepth.fill(depths[f], users[f], f);
+		}
+
+		processor = new DepthProcessor(USER_COLORS);
+		frame = new DepthFrame(WIDTH, HEIGHT);
+		stage = new DepthStage(new DepthProcessor(USER_COLORS), WIDTH, HEIGHT, new Canvas());
+		g2d = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2d.dispose();
+	}
+
+	private int nextFrame() {
+		int f = next++ % FRAMES;
+		depths[f].rewind();
+		users[f].rewind();
+		return f;
+	}
+
+	@Benchmark
+	public int histogram() {
+		int f = nextFrame();
+		processor.calcHistogram(depths[f]);
+		return depths[f].position();
+	}
+
+	@Benchmark
+	public int process() {
+		int f = nextFrame();
+		processor.process(depths[f], users[f], frame.bytes);
+		return processor.getUserPixels();
+	}
+
+	// as TrackerPanel does while idle
+	@Benchmark
+	public int processCoarse() {
+		int f = nextFrame();
+		processor.processCoarse(depths[f], users[f], frame.bytes, WIDTH, IdleMode.STEP);
+		return processor.getUserPixels();
+	}
+
+	// the sensor thread's share of the preview: copying the maps out for
+	// DepthStage, which colours them on its own thread meanwhile
+	@Benchmark
+	public int submit() {
+		int f = nextFrame();
+		stage.submit(depths[f], users[f], f, 1);
+		return depths[f].position();
+	}
+
+	// as TrackerPanel.drawUserDepths(), into an offscreen image
+	@Benchmark
+	public boolean draw() {
+		return g2d.drawImage(frame.image, 0, 0, null);
+	}
+}
@@ -0,0 +1,118 @@
+/** GestureBench
+ *
+ *  Gesture detection on a synthetic skeleton, and sequence detection over
+ *  short and long gesture histories.
+ **/
+
+package blockdude;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.OpenNI.*;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GestureBench {
+	private int calls;
+	private FrameTag tag = new FrameTag(1, System.nanoTime());
+
+	// a user alternately standing at rest, and turned with one hand up
+	// and the other arm out, so gestures start and stop every frame
+	private HashMap<SkeletonJoint, SkeletonJointPosition> rest, active;
+	private HashMap<Integer, HashMap<SkeletonJoint, SkeletonJointPosition>> userSkels =
+		new HashMap<Integer, HashMap<SkeletonJoint, SkeletonJointPosition>>();
+	private GestureSequences gestSeqs;
+	private SkeletonsGestures gests;
+	private int frame;
+
+	private GestureSequences longSeqs, matchSeqs;
+
+	@Setup
+	public void setUp() {
+		GesturesWatcher watcher = (userID, gest, isActivated, tag) -> calls++;
+
+		rest = restPose();
+		active = activePose();
+		gestSeqs = new GestureSequences(watcher);
+		gestSeqs.addUser(1);
+		gests = new SkeletonsGestures(watcher, userSkels, gestSeqs);
+
+		// a long history that never completes a sequence, so every
+		// sub-sequence is searched for through all of it
+		longSeqs = new GestureSequences(watcher);
+		longSeqs.addUser(1);
+		GestureName[] noise = { GestureName.TURN_LEFT, GestureName.RH_OUT,
+								GestureName.LH_OUT, GestureName.TURN_RIGHT };
+		for(int i=0; i<1000; i++) {
+			longSeqs.addUserGest(1, noise[i % noise.length]);
+		}
+
+		matchSeqs = new GestureSequences(watcher);
+		matchSeqs.addUser(1);
+	}
+
+	@Benchmark
+	public int checkGests() {
+		int f = frame++;
+		userSkels.put(1, (f & 1) == 0 ? rest : active);
+		gests.checkGests(1, tag);
+		if((f & 63) == 63) {
+			gestSeqs.removeUser(1);   // these gestures never complete a sequence
+			gestSeqs.addUser(1);
+		}
+		return calls;
+	}
+
+	@Benchmark
+	public int checkSeqs() {
+		longSeqs.checkSeqs(1, tag);
+		return calls;
+	}
+
+	// a sequence completed and purged each time
+	@Benchmark
+	public int matchSeq() {
+		matchSeqs.addUserGest(1, GestureName.RH_BENT);
+		matchSeqs.addUserGest(1, GestureName.RH_STRAIGHT);
+		matchSeqs.checkSeqs(1, tag);
+		return calls;
+	}
+
+
+	private static HashMap<SkeletonJoint, SkeletonJointPosition> restPose() {
+		HashMap<SkeletonJoint, SkeletonJointPosition> skel = new HashMap<SkeletonJoint, SkeletonJointPosition>();
+		joint(skel, SkeletonJoint.HEAD,           0, -300, 2000);
+		joint(skel, SkeletonJoint.NECK,           0, -200, 2000);
+		joint(skel, SkeletonJoint.TORSO,          0,    0, 2000);
+		joint(skel, SkeletonJoint.RIGHT_SHOULDER, -100, -200, 2000);
+		joint(skel, SkeletonJoint.RIGHT_ELBOW,  -110,  -50, 2000);
+		joint(skel, SkeletonJoint.RIGHT_HAND,   -110,  100, 2000);
+		joint(skel, SkeletonJoint.LEFT_SHOULDER,  100, -200, 2000);
+		joint(skel, SkeletonJoint.LEFT_ELBOW,     110,  -50, 2000);
+		joint(skel, SkeletonJoint.LEFT_HAND,      110,  100, 2000);
+		joint(skel, SkeletonJoint.RIGHT_HIP,      -80,  150, 2000);
+		joint(skel, SkeletonJoint.LEFT_HIP,        80,  150, 2000);
+		return skel;
+	}
+
+	private static HashMap<SkeletonJoint, SkeletonJointPosition> activePose() {
+		HashMap<SkeletonJoint, SkeletonJointPosition> skel = restPose();
+		joint(skel, SkeletonJoint.RIGHT_ELBOW,  -110, -300, 2000);   // hand above the head
+		joint(skel, SkeletonJoint.RIGHT_HAND,   -110, -400, 2000);
+		joint(skel, SkeletonJoint.LEFT_ELBOW,     250, -200, 2000);   // arm straight out
+		joint(skel, SkeletonJoint.LEFT_HAND,      400, -200, 2000);
+		joint(skel, SkeletonJoint.RIGHT_HIP,      -80,  150, 1700);   // turned left
+		return skel;
+	}
+
+	private static void joint(HashMap<SkeletonJoint, SkeletonJointPosition> skel,
+								SkeletonJoint joint, float x, float y, float z) {
+		skel.put(joint, new SkeletonJointPosition(new Point3D(x, y, z), 1));
+	}
+}
@@ -0,0 +1,98 @@
+/** LevelBench
+ *
+ *  Level moves, lifts and drops, parsing, and drawing into an offscreen
+ *  image. Reads levels/1.lvl, so run from the top directory.
+ **/
+
+package blockdude;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = "-Djava.awt.headless=true")
+public class LevelBench {
+	private static final int WIDTH = 640, HEIGHT = 480;
+
+	private File file = new File("levels/1.lvl");
+	private Level level, blocks, shown;
+	private Graphics2D g2d;
+	private int step;
+
+	@Setup
+	public void setUp() throws IOException {
+		level = new Level(file, WIDTH, HEIGHT);
+		blocks = new Level(blockLevel(), WIDTH, HEIGHT);
+		shown = new Level(file, WIDTH, HEIGHT);
+		g2d = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB).createGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		g2d.dispose();
+	}
+
+	@Benchmark
+	public long move() {
+		if((step++ & 1) == 0) {
+			level.moveLeft();
+		} else {
+			level.moveRight();
+		}
+		return level.getMoves();
+	}
+
+	// the player starts next to a block: pick it up, put it back
+	@Benchmark
+	public long liftPlace() {
+		if((step++ & 1) == 0) {
+			blocks.liftBlockRight();
+		} else {
+			blocks.placeBlockRight();
+		}
+		return blocks.getMoves();
+	}
+
+	@Benchmark
+	public Board parse() throws IOException {
+		return LevelParser.parse(file);
+	}
+
+	@Benchmark
+	public void draw() {
+		shown.snapshot();
+		shown.draw(g2d);
+	}
+
+	@Benchmark
+	public void drawNewLayer() {
+		shown.invalidate();
+		shown.snapshot();
+		shown.draw(g2d);
+	}
+
+
+	private static File blockLevel() throws IOException {
+		File file = File.createTempFile("bench", ".lvl");
+		file.deleteOnExit();
+		new File(file.getPath() + "c").deleteOnExit();   // its compiled form
+		Writer out = new FileWriter(file);
+		try {
+			out.write("0 0 0 0 0 0\n");
+			out.write("0 0 0 0 0 0\n");
+			out.write("8 0 7 3 0 1\n");
+			out.write("8 8 8 8 8 8\n");
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+}
@@ -1 +1,4 @@
-java -cp /usr/share/java/org.OpenNI.jar:/usr/share/java/com.primesense.NITE.jar:./classes -Djava.library.path=/usr/lib/ BlockDude
+# keeps a flight recording of the last 30 minutes on disk; when a kiosk
+# stutters, save it with:  jcmd BlockDude JFR.dump name=blockdude filename=stutter.jfr
+mkdir -p recordings
+java -XX:StartFlightRecording=name=blockdude,settings=default,disk=true,maxage=30m,dumponexit=true,filename=recordings/ -cp /usr/share/java/org.OpenNI.jar:/usr/share/java/com.primesense.NITE.jar:./classes -Djava.library.path=/usr/lib/ BlockDude